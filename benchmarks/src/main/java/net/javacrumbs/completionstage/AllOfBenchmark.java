@@ -0,0 +1,115 @@
+/**
+ * Copyright 2009-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.completionstage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fan-out of {@code size} pending stages joined by {@link CompletionStageFactory#allOf} and
+ * {@link CompletionStageFactory#anyOf}, then completed one by one. {@link CompletableFuture#allOf}
+ * with the results collected afterwards and {@link CompletableFuture#anyOf} are the baseline.
+ * Time per operation should grow linearly with the size.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AllOfBenchmark {
+    private final CompletionStageFactory factory = new CompletionStageFactory(Runnable::run);
+
+    @Param({"10", "1000", "100000"})
+    public int size;
+
+    @Benchmark
+    public CompletionStage<List<Integer>> allOf() {
+        List<CompletableCompletionStage<Integer>> stages = createStages();
+        CompletionStage<List<Integer>> result = factory.allOf(stages);
+        for (int i = 0; i < size; i++) {
+            stages.get(i).complete(i);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public CompletableFuture<List<Integer>> completableFutureAllOf() {
+        List<CompletableFuture<Integer>> futures = createFutures();
+        CompletableFuture<List<Integer>> result = CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[size]))
+                .thenApply(ignored -> {
+                    List<Integer> results = new ArrayList<>(size);
+                    for (CompletableFuture<Integer> future : futures) {
+                        results.add(future.join());
+                    }
+                    return results;
+                });
+        for (int i = 0; i < size; i++) {
+            futures.get(i).complete(i);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public CompletionStage<Integer> anyOf() {
+        List<CompletableCompletionStage<Integer>> stages = createStages();
+        CompletionStage<Integer> result = factory.anyOf(stages);
+        for (int i = 0; i < size; i++) {
+            stages.get(i).complete(i);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public CompletableFuture<Object> completableFutureAnyOf() {
+        List<CompletableFuture<Integer>> futures = createFutures();
+        CompletableFuture<Object> result = CompletableFuture.anyOf(futures.toArray(new CompletableFuture<?>[size]));
+        for (int i = 0; i < size; i++) {
+            futures.get(i).complete(i);
+        }
+        return result;
+    }
+
+    private List<CompletableCompletionStage<Integer>> createStages() {
+        List<CompletableCompletionStage<Integer>> stages = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            stages.add(factory.createCompletionStage());
+        }
+        return stages;
+    }
+
+    private List<CompletableFuture<Integer>> createFutures() {
+        List<CompletableFuture<Integer>> futures = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            futures.add(new CompletableFuture<>());
+        }
+        return futures;
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright 2009-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.completionstage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads random keys from a cache of 1000 entries. With a working set of 1000 keys all reads are hits, with 2000 keys
+ * about half of the reads load the value and evict an entry. With expiration enabled every read takes the time
+ * to check whether the entry has expired. The baseline is a {@link ConcurrentHashMap} of
+ * {@link CompletableFuture}s loaded by {@code computeIfAbsent}, evicting whichever entry its iterator returns first.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AsyncCacheBenchmark {
+    private static final int MAXIMUM_SIZE = 1000;
+
+    private final CompletionStageFactory factory = new CompletionStageFactory(Runnable::run);
+
+    @Param({"1000", "2000"})
+    public int workingSet;
+
+    @Param({"false", "true"})
+    public boolean expiring;
+
+    private AsyncCache<Integer, Integer> cache;
+    private ConcurrentHashMap<Integer, CompletableFuture<Integer>> map;
+
+    @Setup
+    public void setUp() {
+        cache = expiring
+            ? new AsyncCache<>(factory, factory::completedStage, MAXIMUM_SIZE, 1, TimeUnit.HOURS)
+            : new AsyncCache<>(factory, factory::completedStage, MAXIMUM_SIZE);
+        map = new ConcurrentHashMap<>();
+    }
+
+    @Benchmark
+    public CompletionStage<Integer> asyncCache() {
+        return cache.get(ThreadLocalRandom.current().nextInt(workingSet));
+    }
+
+    @Benchmark
+    public CompletableFuture<Integer> completableFutureMap() {
+        Integer key = ThreadLocalRandom.current().nextInt(workingSet);
+        CompletableFuture<Integer> future = map.get(key);
+        if (future == null) {
+            future = map.computeIfAbsent(key, CompletableFuture::completedFuture);
+            if (map.size() > MAXIMUM_SIZE) {
+                Iterator<Integer> keys = map.keySet().iterator();
+                if (keys.hasNext()) {
+                    map.remove(keys.next());
+                }
+            }
+        }
+        return future;
+    }
+}
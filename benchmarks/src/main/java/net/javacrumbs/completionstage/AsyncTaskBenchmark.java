@@ -0,0 +1,101 @@
+/**
+ * Copyright 2009-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.completionstage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * {@link CompletionStageFactory#supplyAsync(Supplier, Executor)} and {@link CompletionStageFactory#runAsync(Runnable, Executor)}
+ * compared to {@link CompletableFuture} using the same executor. Same thread executor shows the overhead of the stage itself,
+ * the thread pool shows round trip including the hand-off to the pool.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AsyncTaskBenchmark {
+    private static final Supplier<Integer> SUPPLIER = () -> 42;
+    private static final Runnable RUNNABLE = () -> {
+    };
+
+    @Param({"sameThread", "threadPool"})
+    public String executorType;
+
+    private ExecutorService executorService;
+    private Executor executor;
+    private CompletionStageFactory factory;
+
+    @Setup
+    public void setUp() {
+        if ("threadPool".equals(executorType)) {
+            executorService = Executors.newFixedThreadPool(4);
+            executor = executorService;
+        } else {
+            executor = Runnable::run;
+        }
+        factory = new CompletionStageFactory(executor);
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (executorService != null) {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Benchmark
+    public Integer supplyAsync() {
+        CompletionStage<Integer> stage = factory.supplyAsync(SUPPLIER, executor);
+        return stage.toCompletableFuture().join();
+    }
+
+    @Benchmark
+    public Integer completableFutureSupplyAsync() {
+        return CompletableFuture.supplyAsync(SUPPLIER, executor).join();
+    }
+
+    @Benchmark
+    public Void runAsync() {
+        CompletionStage<Void> stage = factory.runAsync(RUNNABLE, executor);
+        return stage.toCompletableFuture().join();
+    }
+
+    @Benchmark
+    public Void completableFutureRunAsync() {
+        return CompletableFuture.runAsync(RUNNABLE, executor).join();
+    }
+}
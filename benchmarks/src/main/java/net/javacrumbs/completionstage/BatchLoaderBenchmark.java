@@ -0,0 +1,118 @@
+/**
+ * Copyright 2009-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.completionstage;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Loads 100 keys, each of them requested twice in a row, from a simulated backend answering every call after 1 ms.
+ * The batch loader sends batches of up to 32 distinct keys, the baseline sends one {@link CompletableFuture}
+ * request per key. The roundTrips counter is the total number of backend calls, divide it by the number of
+ * operations to get the calls per operation.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BatchLoaderBenchmark {
+    private static final int REQUESTS = 100;
+    private static final int DUPLICATES = 2;
+    private static final int MAX_BATCH_SIZE = 32;
+    private static final long LATENCY_MICROS = 1_000;
+
+    private final CompletionStageFactory factory = new CompletionStageFactory(Runnable::run);
+
+    private ScheduledExecutorService backend;
+    private BatchLoader<Integer, Integer> loader;
+    private RoundTrips roundTrips;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class RoundTrips {
+        public long roundTrips;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            roundTrips = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        backend = Executors.newSingleThreadScheduledExecutor();
+        Function<List<Integer>, CompletionStage<Map<Integer, Integer>>> bulkLoad =
+            keys -> call(keys.stream().collect(Collectors.toMap(key -> key, key -> key)));
+        loader = new BatchLoader<>(factory, bulkLoad, MAX_BATCH_SIZE, 10, TimeUnit.MILLISECONDS);
+    }
+
+    @TearDown
+    public void tearDown() {
+        backend.shutdown();
+    }
+
+    @Benchmark
+    public List<Integer> batchLoader(RoundTrips counter) {
+        roundTrips = counter;
+        List<CompletionStage<Integer>> stages = new ArrayList<>(REQUESTS);
+        for (int i = 0; i < REQUESTS; i++) {
+            stages.add(loader.load(i / DUPLICATES));
+        }
+        loader.dispatch();
+        return factory.allOf(stages).toCompletableFuture().join();
+    }
+
+    @Benchmark
+    public Object completableFuturePerKey(RoundTrips counter) {
+        roundTrips = counter;
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[REQUESTS];
+        for (int i = 0; i < REQUESTS; i++) {
+            futures[i] = call(i / DUPLICATES);
+        }
+        return CompletableFuture.allOf(futures).join();
+    }
+
+    private <T> CompletableFuture<T> call(T result) {
+        roundTrips.roundTrips++;
+        CompletableFuture<T> future = new CompletableFuture<>();
+        backend.schedule(() -> future.complete(result), LATENCY_MICROS, TimeUnit.MICROSECONDS);
+        return future;
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright 2009-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.completionstage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Raw {@link CallbackRegistry} operations - registering dependents and completing the registry.
+ * {@link CompletableFuture} with the same number of dependents is the baseline.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CallbackRegistryBenchmark {
+    private static final Executor SAME_THREAD_EXECUTOR = Runnable::run;
+    private static final Integer VALUE = 42;
+    private static final RuntimeException EXCEPTION = new RuntimeException("Benchmark exception");
+
+    @Param({"1", "10"})
+    public int dependents;
+
+    private Consumer<Integer> successCallback;
+    private Consumer<Throwable> failureCallback;
+    private BiConsumer<Integer, Throwable> completeCallback;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        successCallback = blackhole::consume;
+        failureCallback = blackhole::consume;
+        completeCallback = (result, failure) -> blackhole.consume(result);
+    }
+
+    @Benchmark
+    public CallbackRegistry<Integer> addCallbacksAndSuccess() {
+        CallbackRegistry<Integer> registry = new CallbackRegistry<>();
+        for (int i = 0; i < dependents; i++) {
+            registry.addCallbacks(successCallback, failureCallback, SAME_THREAD_EXECUTOR);
+        }
+        registry.success(VALUE);
+        return registry;
+    }
+
+    @Benchmark
+    public CallbackRegistry<Integer> addCallbacksAndFailure() {
+        CallbackRegistry<Integer> registry = new CallbackRegistry<>();
+        for (int i = 0; i < dependents; i++) {
+            registry.addCallbacks(successCallback, failureCallback, SAME_THREAD_EXECUTOR);
+        }
+        registry.failure(EXCEPTION);
+        return registry;
+    }
+
+    @Benchmark
+    public CallbackRegistry<Integer> successAndAddCallbacks() {
+        CallbackRegistry<Integer> registry = new CallbackRegistry<>();
+        registry.success(VALUE);
+        for (int i = 0; i < dependents; i++) {
+            registry.addCallbacks(successCallback, failureCallback, SAME_THREAD_EXECUTOR);
+        }
+        return registry;
+    }
+
+    @Benchmark
+    public CompletableFuture<Integer> completableFutureWhenCompleteAndComplete() {
+        CompletableFuture<Integer> future = new CompletableFuture<>();
+        for (int i = 0; i < dependents; i++) {
+            future.whenComplete(completeCallback);
+        }
+        future.complete(VALUE);
+        return future;
+    }
+
+    @Benchmark
+    public CompletableFuture<Integer> completableFutureWhenCompleteAndCompleteExceptionally() {
+        CompletableFuture<Integer> future = new CompletableFuture<>();
+        for (int i = 0; i < dependents; i++) {
+            future.whenComplete(completeCallback);
+        }
+        future.completeExceptionally(EXCEPTION);
+        return future;
+    }
+
+    @Benchmark
+    public CompletableFuture<Integer> completableFutureCompleteAndWhenComplete() {
+        CompletableFuture<Integer> future = new CompletableFuture<>();
+        future.complete(VALUE);
+        for (int i = 0; i < dependents; i++) {
+            future.whenComplete(completeCallback);
+        }
+        return future;
+    }
+}
@@ -0,0 +1,161 @@
+/**
+ * Copyright 2009-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.completionstage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Chains of {@code thenApply}, {@code thenCompose} and {@code thenCombine} built on a pending stage
+ * which is completed once the whole chain is in place. The pending {@code thenCombine} variant
+ * combines with a second stage which is completed just before the first one.
+ * {@link CompletableFuture} is the baseline.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ChainBenchmark {
+    private static final Function<Integer, Integer> INCREMENT = i -> i + 1;
+    private static final BiFunction<Integer, Integer, Integer> SUM = (a, b) -> a + b;
+
+    private final CompletionStageFactory factory = new CompletionStageFactory(Runnable::run);
+
+    @Param({"1", "5", "20"})
+    public int chainLength;
+
+    private CompletionStage<Integer> completedStage;
+    private CompletableFuture<Integer> completedFuture;
+    private Function<Integer, CompletionStage<Integer>> composeStage;
+    private Function<Integer, CompletableFuture<Integer>> composeFuture;
+
+    @Setup
+    public void setUp() {
+        completedStage = factory.completedStage(1);
+        completedFuture = CompletableFuture.completedFuture(1);
+        composeStage = i -> factory.completedStage(i + 1);
+        composeFuture = i -> CompletableFuture.completedFuture(i + 1);
+    }
+
+    @Benchmark
+    public CompletionStage<Integer> thenApply() {
+        CompletableCompletionStage<Integer> start = factory.createCompletionStage();
+        CompletionStage<Integer> stage = start;
+        for (int i = 0; i < chainLength; i++) {
+            stage = stage.thenApply(INCREMENT);
+        }
+        start.complete(0);
+        return stage;
+    }
+
+    @Benchmark
+    public CompletableFuture<Integer> completableFutureThenApply() {
+        CompletableFuture<Integer> start = new CompletableFuture<>();
+        CompletableFuture<Integer> future = start;
+        for (int i = 0; i < chainLength; i++) {
+            future = future.thenApply(INCREMENT);
+        }
+        start.complete(0);
+        return future;
+    }
+
+    @Benchmark
+    public CompletionStage<Integer> thenCompose() {
+        CompletableCompletionStage<Integer> start = factory.createCompletionStage();
+        CompletionStage<Integer> stage = start;
+        for (int i = 0; i < chainLength; i++) {
+            stage = stage.thenCompose(composeStage);
+        }
+        start.complete(0);
+        return stage;
+    }
+
+    @Benchmark
+    public CompletableFuture<Integer> completableFutureThenCompose() {
+        CompletableFuture<Integer> start = new CompletableFuture<>();
+        CompletableFuture<Integer> future = start;
+        for (int i = 0; i < chainLength; i++) {
+            future = future.thenCompose(composeFuture);
+        }
+        start.complete(0);
+        return future;
+    }
+
+    @Benchmark
+    public CompletionStage<Integer> thenCombine() {
+        CompletableCompletionStage<Integer> start = factory.createCompletionStage();
+        CompletionStage<Integer> stage = start;
+        for (int i = 0; i < chainLength; i++) {
+            stage = stage.thenCombine(completedStage, SUM);
+        }
+        start.complete(0);
+        return stage;
+    }
+
+    @Benchmark
+    public CompletableFuture<Integer> completableFutureThenCombine() {
+        CompletableFuture<Integer> start = new CompletableFuture<>();
+        CompletableFuture<Integer> future = start;
+        for (int i = 0; i < chainLength; i++) {
+            future = future.thenCombine(completedFuture, SUM);
+        }
+        start.complete(0);
+        return future;
+    }
+
+    @Benchmark
+    public CompletionStage<Integer> thenCombinePending() {
+        CompletableCompletionStage<Integer> start = factory.createCompletionStage();
+        CompletableCompletionStage<Integer> other = factory.createCompletionStage();
+        CompletionStage<Integer> stage = start;
+        for (int i = 0; i < chainLength; i++) {
+            stage = stage.thenCombine(other, SUM);
+        }
+        other.complete(1);
+        start.complete(0);
+        return stage;
+    }
+
+    @Benchmark
+    public CompletableFuture<Integer> completableFutureThenCombinePending() {
+        CompletableFuture<Integer> start = new CompletableFuture<>();
+        CompletableFuture<Integer> other = new CompletableFuture<>();
+        CompletableFuture<Integer> future = start;
+        for (int i = 0; i < chainLength; i++) {
+            future = future.thenCombine(other, SUM);
+        }
+        other.complete(1);
+        start.complete(0);
+        return future;
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ * Copyright 2009-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.completionstage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Completes the head of a very long {@code thenApply} chain. Only trampolined factory is able to complete
+ * chains of this length, without trampolining the completing thread runs out of stack.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Thread)
+public class DeepChainBenchmark {
+    private static final Function<Integer, Integer> INCREMENT = i -> i + 1;
+
+    private final CompletionStageFactory factory = new CompletionStageFactory(Runnable::run, true);
+
+    @Param({"1000000"})
+    public int chainLength;
+
+    @Benchmark
+    public CompletionStage<Integer> trampolinedThenApply() {
+        CompletableCompletionStage<Integer> start = factory.createCompletionStage();
+        CompletionStage<Integer> stage = start;
+        for (int i = 0; i < chainLength; i++) {
+            stage = stage.thenApply(INCREMENT);
+        }
+        start.complete(0);
+        return stage;
+    }
+
+    @Benchmark
+    public CompletableFuture<Integer> completableFutureThenApply() {
+        CompletableFuture<Integer> start = new CompletableFuture<>();
+        CompletableFuture<Integer> future = start;
+        for (int i = 0; i < chainLength; i++) {
+            future = future.thenApply(INCREMENT);
+        }
+        start.complete(0);
+        return future;
+    }
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright 2009-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.completionstage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * A hedged call: {@code applyToEither} on two pending stages which are then completed one after another.
+ * {@link CompletableFuture} is the baseline.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EitherBenchmark {
+    private static final Function<Integer, Integer> INCREMENT = i -> i + 1;
+
+    private final CompletionStageFactory factory = new CompletionStageFactory(Runnable::run);
+
+    private Integer value = 42;
+
+    @Benchmark
+    public CompletionStage<Integer> applyToEither() {
+        CompletableCompletionStage<Integer> primary = factory.createCompletionStage();
+        CompletableCompletionStage<Integer> backup = factory.createCompletionStage();
+        CompletionStage<Integer> result = primary.applyToEither(backup, INCREMENT);
+        backup.complete(value);
+        primary.complete(value);
+        return result;
+    }
+
+    @Benchmark
+    public CompletableFuture<Integer> completableFutureApplyToEither() {
+        CompletableFuture<Integer> primary = new CompletableFuture<>();
+        CompletableFuture<Integer> backup = new CompletableFuture<>();
+        CompletableFuture<Integer> result = primary.applyToEither(backup, INCREMENT);
+        backup.complete(value);
+        primary.complete(value);
+        return result;
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright 2009-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.completionstage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A stage with {@code dependents} thenRunAsync dependents on a pool of {@link #POOL_SIZE} threads is completed,
+ * the operation ends when all the dependents have run. Dependents on the pool wrapped to {@link BatchingExecutor}
+ * are submitted in slices, dependents on the plain pool one task per dependent.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FanOutBenchmark {
+    static final int POOL_SIZE = 8;
+
+    @Param({"100", "1000", "10000"})
+    public int dependents;
+
+    private ExecutorService pool;
+    private CompletionStageFactory factory;
+    private CompletionStageFactory batchingFactory;
+
+    @Setup
+    public void setUp() {
+        pool = Executors.newFixedThreadPool(POOL_SIZE);
+        factory = new CompletionStageFactory(pool);
+        batchingFactory = new CompletionStageFactory(new BatchingExecutor(pool));
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Benchmark
+    public CountDownLatch completionStage() throws InterruptedException {
+        return fanOut(factory);
+    }
+
+    @Benchmark
+    public CountDownLatch batchedCompletionStage() throws InterruptedException {
+        return fanOut(batchingFactory);
+    }
+
+    private CountDownLatch fanOut(CompletionStageFactory factory) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(dependents);
+        CompletableCompletionStage<Integer> stage = factory.createCompletionStage();
+        for (int i = 0; i < dependents; i++) {
+            stage.thenRunAsync(done::countDown);
+        }
+        stage.complete(1);
+        done.await();
+        return done;
+    }
+
+    @Benchmark
+    public CountDownLatch completableFuture() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(dependents);
+        CompletableFuture<Integer> future = new CompletableFuture<>();
+        for (int i = 0; i < dependents; i++) {
+            future.thenRunAsync(done::countDown, pool);
+        }
+        future.complete(1);
+        done.await();
+        return done;
+    }
+}
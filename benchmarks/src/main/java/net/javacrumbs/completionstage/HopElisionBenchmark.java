@@ -0,0 +1,128 @@
+/**
+ * Copyright 2009-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.completionstage;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Chain of {@code length} thenApplyAsync stages on a pool of {@link #POOL_SIZE} threads, the first stage is completed
+ * by a task of the same pool. {@code maxDepth=0} submits every dependent to the pool, {@code maxDepth=64} runs
+ * dependents inline using {@link HopElidingExecutor}. Number of tasks submitted to the pool and number of elided
+ * hops are reported as {@code hops} and {@code elidedHops} secondary results, divide them by the number of operations
+ * to get hops per chain.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HopElisionBenchmark {
+    static final int POOL_SIZE = 4;
+
+    private static final Function<Integer, Integer> INCREMENT = i -> i + 1;
+
+    @Param({"0", "64"})
+    public int maxDepth;
+
+    @Param({"5", "20"})
+    public int length;
+
+    private ExecutorService pool;
+    private HopElidingExecutor executor;
+    private CompletionStageFactory factory;
+
+    @Setup
+    public void setUp() {
+        pool = Executors.newFixedThreadPool(POOL_SIZE);
+        executor = new HopElidingExecutor(pool, maxDepth);
+        factory = new CompletionStageFactory(executor);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Hops {
+        public long hops;
+        public long elidedHops;
+
+        private long lastHops;
+        private long lastElidedHops;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            hops = 0;
+            elidedHops = 0;
+        }
+
+        void record(HopElidingExecutor executor) {
+            long currentHops = executor.getHopCount();
+            long currentElidedHops = executor.getElidedHopCount();
+            hops += currentHops - lastHops;
+            elidedHops += currentElidedHops - lastElidedHops;
+            lastHops = currentHops;
+            lastElidedHops = currentElidedHops;
+        }
+    }
+
+    @Benchmark
+    public Integer completionStage(Hops hops) {
+        CompletableCompletionStage<Integer> first = factory.createCompletionStage();
+        CompletionStage<Integer> stage = first;
+        for (int i = 0; i < length; i++) {
+            stage = stage.thenApplyAsync(INCREMENT);
+        }
+        executor.execute(() -> first.complete(0));
+        Integer result = ((CompletableCompletionStage<Integer>) stage).join();
+        hops.record(executor);
+        return result;
+    }
+
+    @Benchmark
+    public Integer completableFuture() {
+        CompletableFuture<Integer> first = new CompletableFuture<>();
+        CompletableFuture<Integer> future = first;
+        for (int i = 0; i < length; i++) {
+            future = future.thenApplyAsync(INCREMENT, pool);
+        }
+        pool.execute(() -> first.complete(0));
+        return future.join();
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright 2009-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.completionstage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A stage completed by another thread and joined by the benchmark thread. {@link CompletableCompletionStage#join()}
+ * parks the thread directly, {@code toCompletableFuture().join()} shows the cost of bridging through a
+ * {@link CompletableFuture}. {@link CompletableFuture#join()} is the baseline.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class JoinBenchmark {
+    private final Integer value = 42;
+
+    private ExecutorService executor;
+    private CompletionStageFactory factory;
+
+    @Setup
+    public void setUp() {
+        executor = Executors.newSingleThreadExecutor();
+        factory = new CompletionStageFactory(executor);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public Integer join() {
+        CompletableCompletionStage<Integer> stage = factory.createCompletionStage();
+        executor.execute(() -> stage.complete(value));
+        return stage.join();
+    }
+
+    @Benchmark
+    public Integer toCompletableFutureJoin() {
+        CompletableCompletionStage<Integer> stage = factory.createCompletionStage();
+        executor.execute(() -> stage.complete(value));
+        return stage.toCompletableFuture().join();
+    }
+
+    @Benchmark
+    public Integer completableFutureJoin() {
+        CompletableFuture<Integer> future = new CompletableFuture<>();
+        executor.execute(() -> future.complete(value));
+        return future.join();
+    }
+}
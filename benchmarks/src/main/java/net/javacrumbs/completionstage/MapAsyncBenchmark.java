@@ -0,0 +1,90 @@
+/**
+ * Copyright 2009-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.completionstage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Maps 1000 items by a function returning completed stages with at most 16 of them pending, in ordered and
+ * unordered mode. Measures the overhead of the bookkeeping. The baseline is the usual hand-rolled
+ * {@link Semaphore} around {@link CompletableFuture}, which does not keep the order.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MapAsyncBenchmark {
+    private static final int MAX_CONCURRENCY = 16;
+
+    private final CompletionStageFactory factory = new CompletionStageFactory(Runnable::run);
+
+    @Param({"1000"})
+    public int items;
+
+    private List<Integer> source;
+
+    @Setup
+    public void setUp() {
+        source = IntStream.range(0, items).boxed().collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public CompletionStage<Void> ordered(Blackhole blackhole) {
+        return factory.mapAsync(source, i -> factory.completedStage(i), MAX_CONCURRENCY, true, blackhole::consume);
+    }
+
+    @Benchmark
+    public CompletionStage<Void> unordered(Blackhole blackhole) {
+        return factory.mapAsync(source, i -> factory.completedStage(i), MAX_CONCURRENCY, false, blackhole::consume);
+    }
+
+    @Benchmark
+    public CompletableFuture<Void> completableFutureWithSemaphore(Blackhole blackhole) throws InterruptedException {
+        Semaphore semaphore = new Semaphore(MAX_CONCURRENCY);
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[source.size()];
+        for (int i = 0; i < futures.length; i++) {
+            semaphore.acquire();
+            futures[i] = CompletableFuture.completedFuture(source.get(i)).whenComplete((result, failure) -> {
+                synchronized (semaphore) {
+                    blackhole.consume(result);
+                }
+                semaphore.release();
+            });
+        }
+        return CompletableFuture.allOf(futures);
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright 2009-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.completionstage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The pipeline formerly exercised by the naive {@code LoadTest}. The value is either set before the pipeline
+ * is built or after it. {@link CompletableFuture} with the same executor is the baseline.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PipelineBenchmark {
+    private static final Executor SAME_THREAD_EXECUTOR = Runnable::run;
+
+    private final CompletionStageFactory factory = new CompletionStageFactory(SAME_THREAD_EXECUTOR);
+
+    private int value = 42;
+
+    @Benchmark
+    public void valueSetAtTheEnd(Blackhole blackhole) {
+        CompletableCompletionStage<Integer> start = factory.createCompletionStage();
+        createStages(start, blackhole);
+        start.complete(value);
+    }
+
+    @Benchmark
+    public void valueSetAtTheBeginning(Blackhole blackhole) {
+        createStages(factory.completedStage(value), blackhole);
+    }
+
+    @Benchmark
+    public void completableFutureValueSetAtTheEnd(Blackhole blackhole) {
+        CompletableFuture<Integer> start = new CompletableFuture<>();
+        createFutures(start, blackhole);
+        start.complete(value);
+    }
+
+    @Benchmark
+    public void completableFutureValueSetAtTheBeginning(Blackhole blackhole) {
+        createFutures(CompletableFuture.completedFuture(value), blackhole);
+    }
+
+    private CompletionStage<Void> createStages(CompletionStage<Integer> start, Blackhole blackhole) {
+        int expected = value;
+        return start
+            .thenApplyAsync(i -> i * 2)
+            .thenCombine(factory.completedStage(50), (a, b) -> a + b)
+            .thenApply(i -> i / 2)
+            .thenApply(i -> i - expected)
+            .thenAccept(blackhole::consume);
+    }
+
+    private CompletableFuture<Void> createFutures(CompletableFuture<Integer> start, Blackhole blackhole) {
+        int expected = value;
+        return start
+            .thenApplyAsync(i -> i * 2, SAME_THREAD_EXECUTOR)
+            .thenCombine(CompletableFuture.completedFuture(50), (a, b) -> a + b)
+            .thenApply(i -> i / 2)
+            .thenApply(i -> i - expected)
+            .thenAccept(blackhole::consume);
+    }
+}
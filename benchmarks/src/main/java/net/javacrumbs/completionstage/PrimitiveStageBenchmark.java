@@ -0,0 +1,103 @@
+/**
+ * Copyright 2009-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.completionstage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Integer arithmetic in a chain of {@code chainLength} thenApply stages followed by a thenCombine, built on pending
+ * stages. {@link IntCompletionStage} keeps the values unboxed, the generic stage and {@link CompletableFuture}
+ * box every intermediate result. The values are outside of the Integer cache. Run with {@code -prof gc} to compare
+ * allocation rates.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PrimitiveStageBenchmark {
+    private static final int START = 1_000;
+
+    private static final IntUnaryOperator INT_DOUBLE = i -> i * 2;
+    private static final IntBinaryOperator INT_SUM = (a, b) -> a + b;
+    private static final Function<Integer, Integer> DOUBLE = i -> i * 2;
+    private static final BinaryOperator<Integer> SUM = (a, b) -> a + b;
+
+    private final CompletionStageFactory factory = new CompletionStageFactory(Runnable::run);
+
+    @Param({"5"})
+    public int chainLength;
+
+    @Benchmark
+    public int intStage() {
+        IntCompletableCompletionStage start = factory.createIntCompletionStage();
+        IntCompletableCompletionStage other = factory.createIntCompletionStage();
+        IntCompletionStage stage = start;
+        for (int i = 0; i < chainLength; i++) {
+            stage = stage.thenApply(INT_DOUBLE);
+        }
+        stage = stage.thenCombine(other, INT_SUM);
+        other.complete(START);
+        start.complete(START);
+        return stage.join();
+    }
+
+    @Benchmark
+    public Integer genericStage() {
+        CompletableCompletionStage<Integer> start = factory.createCompletionStage();
+        CompletableCompletionStage<Integer> other = factory.createCompletionStage();
+        CompletionStage<Integer> stage = start;
+        for (int i = 0; i < chainLength; i++) {
+            stage = stage.thenApply(DOUBLE);
+        }
+        stage = stage.thenCombine(other, SUM);
+        other.complete(START);
+        start.complete(START);
+        return ((CompletableCompletionStage<Integer>) stage).join();
+    }
+
+    @Benchmark
+    public Integer completableFuture() {
+        CompletableFuture<Integer> start = new CompletableFuture<>();
+        CompletableFuture<Integer> other = new CompletableFuture<>();
+        CompletableFuture<Integer> future = start;
+        for (int i = 0; i < chainLength; i++) {
+            future = future.thenApply(DOUBLE);
+        }
+        future = future.thenCombine(other, SUM);
+        other.complete(START);
+        start.complete(START);
+        return future.join();
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright 2009-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.completionstage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Arms a timeout on a stage and completes the stage before the timeout expires, while {@code pendingTimeouts}
+ * other timeouts are waiting. The hashed wheel timer keeps the cost flat, the baseline arms its own
+ * {@link ScheduledThreadPoolExecutor} task per {@link CompletableFuture} and cancels it on completion.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Thread)
+public class TimeoutBenchmark {
+    private static final long TIMEOUT_MINUTES = 30;
+
+    @Param({"0", "1000", "1000000"})
+    public int pendingTimeouts;
+
+    private final Integer value = 42;
+
+    private ExecutorService executor;
+    private ScheduledThreadPoolExecutor scheduler;
+    private CompletionStageFactory factory;
+
+    // keeps the pending timeouts alive
+    private final List<Object> pending = new ArrayList<>();
+
+    @Setup
+    public void setUp() {
+        executor = Executors.newSingleThreadExecutor();
+        factory = new CompletionStageFactory(executor);
+        scheduler = new ScheduledThreadPoolExecutor(1);
+        scheduler.setRemoveOnCancelPolicy(true);
+        for (int i = 0; i < pendingTimeouts; i++) {
+            // pending timeouts expire later than the measured ones, spread over an hour
+            long pendingTimeout = TIMEOUT_MINUTES * 60 + i % 3600;
+            pending.add(factory.createCompletionStage().orTimeout(pendingTimeout, TimeUnit.SECONDS));
+            CompletableFuture<Integer> future = new CompletableFuture<>();
+            pending.add(scheduler.schedule(() -> future.completeExceptionally(new TimeoutException()), pendingTimeout, TimeUnit.SECONDS));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        pending.clear();
+        scheduler.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public CompletableCompletionStage<Integer> orTimeout() {
+        CompletableCompletionStage<Integer> stage = factory.createCompletionStage();
+        stage.orTimeout(TIMEOUT_MINUTES, TimeUnit.MINUTES);
+        stage.complete(value);
+        return stage;
+    }
+
+    @Benchmark
+    public CompletableFuture<Integer> scheduledExecutorTimeout() {
+        CompletableFuture<Integer> future = new CompletableFuture<>();
+        ScheduledFuture<?> timeout = scheduler.schedule(() -> future.completeExceptionally(new TimeoutException()), TIMEOUT_MINUTES, TimeUnit.MINUTES);
+        future.complete(value);
+        timeout.cancel(false);
+        return future;
+    }
+}
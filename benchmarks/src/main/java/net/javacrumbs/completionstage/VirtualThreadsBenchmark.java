@@ -0,0 +1,96 @@
+/**
+ * Copyright 2009-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.completionstage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Fan-out of {@code tasks} blocking calls, each of them sleeps for a millisecond as if it was waiting for a network
+ * or a database. {@link CompletionStageFactory#virtualThreads()} is compared to a fixed pool of
+ * {@link #POOL_SIZE} threads. The virtual threads variant requires Java 21, run the benchmarks on it.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class VirtualThreadsBenchmark {
+    static final int POOL_SIZE = 64;
+
+    private static final Supplier<Integer> BLOCKING_CALL = () -> {
+        try {
+            Thread.sleep(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return 1;
+    };
+
+    @Param({"fixedPool", "virtualThreads"})
+    public String executorType;
+
+    @Param({"10", "100", "1000"})
+    public int tasks;
+
+    private ExecutorService fixedPool;
+    private CompletionStageFactory factory;
+
+    @Setup
+    public void setUp() {
+        if ("virtualThreads".equals(executorType)) {
+            factory = CompletionStageFactory.virtualThreads();
+        } else {
+            fixedPool = Executors.newFixedThreadPool(POOL_SIZE);
+            factory = new CompletionStageFactory(fixedPool);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (fixedPool != null) {
+            fixedPool.shutdownNow();
+        }
+    }
+
+    @Benchmark
+    public List<Integer> blockingCalls() {
+        List<CompletionStage<Integer>> stages = new ArrayList<>(tasks);
+        for (int i = 0; i < tasks; i++) {
+            stages.add(factory.supplyAsync(BLOCKING_CALL));
+        }
+        return ((CompletableCompletionStage<List<Integer>>) factory.allOf(stages)).join();
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright 2009-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.completionstage;
+
+import net.javacrumbs.completionstage.spi.CompletableCompletionStageFactory;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Stage completed with the results of all the input stages. Results are collected to one array and a counter
+ * tracks how many of them are still missing, so each input costs just one small callback.
+ */
+final class AllOfStage<T> extends SimpleCompletionStage<List<T>> {
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<AllOfStage> PENDING =
+            AtomicIntegerFieldUpdater.newUpdater(AllOfStage.class, "pending");
+
+    private final Object[] results;
+
+    private volatile int pending;
+
+    private AllOfStage(int size, Executor defaultExecutor, Executor sameThreadExecutor,
+                       CompletableCompletionStageFactory completionStageFactory) {
+        super(defaultExecutor, sameThreadExecutor, completionStageFactory);
+        this.results = new Object[size];
+        this.pending = size;
+    }
+
+    /**
+     * Creates the stage and registers it to all the inputs. The collection must not be empty.
+     */
+    static <T> AllOfStage<T> allOf(Collection<? extends CompletionStage<? extends T>> stages, Executor defaultExecutor,
+                                   Executor sameThreadExecutor, CompletableCompletionStageFactory completionStageFactory) {
+        AllOfStage<T> allOfStage = new AllOfStage<>(stages.size(), defaultExecutor, sameThreadExecutor, completionStageFactory);
+        int index = 0;
+        for (CompletionStage<? extends T> stage : stages) {
+            registerCallback(stage, new InputCallback<>(allOfStage, index++, sameThreadExecutor));
+        }
+        return allOfStage;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void inputCompleted(int index, T result) {
+        results[index] = result;
+        if (PENDING.decrementAndGet(this) == 0) {
+            complete((List<T>) Arrays.asList(results));
+        }
+    }
+
+    private static final class InputCallback<T> extends CallbackRegistry.Callback<T> {
+        private final AllOfStage<T> allOfStage;
+        private final int index;
+
+        private InputCallback(AllOfStage<T> allOfStage, int index, Executor executor) {
+            super(executor);
+            this.allOfStage = allOfStage;
+            this.index = index;
+        }
+
+        @Override
+        protected void onSuccess(T result) {
+            allOfStage.inputCompleted(index, result);
+        }
+
+        @Override
+        protected void onFailure(Throwable failure) {
+            allOfStage.completeExceptionally(wrapException(failure));
+        }
+    }
+}
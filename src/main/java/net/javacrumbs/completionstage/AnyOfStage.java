@@ -0,0 +1,64 @@
+/**
+ * Copyright 2009-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.completionstage;
+
+import net.javacrumbs.completionstage.spi.CompletableCompletionStageFactory;
+
+import java.util.Collection;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+
+/**
+ * Stage completed by whichever input stage completes first. Later results are ignored
+ * since a stage can be completed only once.
+ */
+final class AnyOfStage<T> extends SimpleCompletionStage<T> {
+
+    private AnyOfStage(Executor defaultExecutor, Executor sameThreadExecutor, CompletableCompletionStageFactory completionStageFactory) {
+        super(defaultExecutor, sameThreadExecutor, completionStageFactory);
+    }
+
+    /**
+     * Creates the stage and registers it to all the inputs.
+     */
+    static <T> AnyOfStage<T> anyOf(Collection<? extends CompletionStage<? extends T>> stages, Executor defaultExecutor,
+                                   Executor sameThreadExecutor, CompletableCompletionStageFactory completionStageFactory) {
+        AnyOfStage<T> anyOfStage = new AnyOfStage<>(defaultExecutor, sameThreadExecutor, completionStageFactory);
+        for (CompletionStage<? extends T> stage : stages) {
+            registerCallback(stage, new InputCallback<>(anyOfStage, sameThreadExecutor));
+        }
+        return anyOfStage;
+    }
+
+    private static final class InputCallback<T> extends CallbackRegistry.Callback<T> {
+        private final AnyOfStage<T> anyOfStage;
+
+        private InputCallback(AnyOfStage<T> anyOfStage, Executor executor) {
+            super(executor);
+            this.anyOfStage = anyOfStage;
+        }
+
+        @Override
+        protected void onSuccess(T result) {
+            anyOfStage.complete(result);
+        }
+
+        @Override
+        protected void onFailure(Throwable failure) {
+            anyOfStage.completeExceptionally(wrapException(failure));
+        }
+    }
+}
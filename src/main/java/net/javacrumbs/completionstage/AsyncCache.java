@@ -0,0 +1,431 @@
+/**
+ * Copyright 2009-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.completionstage;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+import static java.util.Objects.requireNonNull;
+import static net.javacrumbs.completionstage.CompletionStageMetrics.DOMAIN;
+
+/**
+ * Loading cache of completion stages. Concurrent requests for a key that is being loaded share the same pending
+ * load, the loader is called only once. Failed loads are never cached, the entry is removed before the stage is
+ * completed exceptionally, so that the next request loads the value again.
+ * <p>
+ * The size is capped by sampled LRU eviction, the cache samples a few entries and evicts the least recently used one.
+ * Samples are taken by a cursor sweeping the table, so that eviction does not need any per-access bookkeeping
+ * besides a stamp. Recency is measured by a logical clock advanced on every insertion instead of the system
+ * clock, so that hits do not read the time and a hot entry is written at most once between two insertions.
+ * Entries are expired a given time after they have been loaded, expired entries are removed lazily when read or
+ * sampled. The time is read on hits only if expiration is enabled. Entries which are still being loaded are never evicted, the cache may temporarily
+ * hold more entries than the limit while loads are pending.
+ * <p>
+ * Hits only read a {@link ConcurrentHashMap} and update striped counters, so the cache scales with the number of
+ * cores. Statistics can be registered as a JMX MBean.
+ * <p>
+ * Every request gets its own stage depending on the cached one, so completing or cancelling it does not affect other
+ * callers nor the cache.
+ * <p>
+ * Usage
+ * <pre>
+ *     AsyncCache&lt;String, User&gt; cache = new AsyncCache&lt;&gt;(factory, userService::loadUser, 10_000, 5, TimeUnit.MINUTES);
+ *     cache.get("john").thenAccept(user -&gt; ...);
+ * </pre>
+ *
+ * @param <K> type of keys
+ * @param <V> type of values
+ */
+public final class AsyncCache<K, V> implements AsyncCacheMBean {
+    static final int SAMPLE_SIZE = 8;
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicLongFieldUpdater<AsyncCache> ACCESS_CLOCK = AtomicLongFieldUpdater.newUpdater(AsyncCache.class, "accessClock");
+
+    private final CompletionStageFactory factory;
+    private final Function<? super K, ? extends CompletionStage<? extends V>> loader;
+    private final long maximumSize;
+    private final long expireAfterWriteNanos;
+    private final boolean expiring;
+    private final LongSupplier ticker;
+
+    private final ConcurrentHashMap<K, Entry<V>> map = new ConcurrentHashMap<>();
+
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    // guarded by evictionLock
+    private Iterator<Map.Entry<K, Entry<V>>> evictionCursor;
+
+    private volatile long accessClock;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loadSuccesses = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    /**
+     * Creates cache without expiration.
+     *
+     * @param factory     factory creating the stages returned by the cache
+     * @param loader      function loading a value, called once per miss
+     * @param maximumSize maximal number of entries
+     */
+    public AsyncCache(CompletionStageFactory factory, Function<? super K, ? extends CompletionStage<? extends V>> loader, long maximumSize) {
+        this(factory, loader, maximumSize, Long.MAX_VALUE, System::nanoTime);
+    }
+
+    /**
+     * Creates cache.
+     *
+     * @param factory          factory creating the stages returned by the cache
+     * @param loader           function loading a value, called once per miss
+     * @param maximumSize      maximal number of entries
+     * @param expireAfterWrite time after which a loaded value is expired
+     * @param unit             unit of expireAfterWrite
+     */
+    public AsyncCache(CompletionStageFactory factory, Function<? super K, ? extends CompletionStage<? extends V>> loader, long maximumSize,
+                      long expireAfterWrite, TimeUnit unit) {
+        this(factory, loader, maximumSize, requireNonNull(unit, "unit must not be null").toNanos(expireAfterWrite), System::nanoTime);
+        if (expireAfterWrite <= 0) {
+            throw new IllegalArgumentException("expireAfterWrite has to be positive, was " + expireAfterWrite);
+        }
+    }
+
+    AsyncCache(CompletionStageFactory factory, Function<? super K, ? extends CompletionStage<? extends V>> loader, long maximumSize,
+               long expireAfterWriteNanos, LongSupplier ticker) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximumSize has to be positive, was " + maximumSize);
+        }
+        this.factory = requireNonNull(factory, "factory must not be null");
+        this.loader = requireNonNull(loader, "loader must not be null");
+        this.maximumSize = maximumSize;
+        this.expireAfterWriteNanos = expireAfterWriteNanos;
+        this.expiring = expireAfterWriteNanos != Long.MAX_VALUE;
+        this.ticker = ticker;
+    }
+
+    /**
+     * Returns stage of the cached value. If the value is not cached, calls the loader, requests for the same key
+     * arriving while the value is being loaded wait for the same load.
+     *
+     * @param key the key
+     * @return stage completed with the value or with the exception the load failed with
+     */
+    public CompletionStage<V> get(K key) {
+        requireNonNull(key, "key must not be null");
+        long now = expiring ? ticker.getAsLong() : 0L;
+        Entry<V> entry = map.get(key);
+        if (entry != null && isAlive(key, entry, now)) {
+            hits.increment();
+            entry.touch(accessClock);
+            return entry.dependent();
+        }
+        return load(key, now);
+    }
+
+    /**
+     * Returns stage of the cached value, or of the value being loaded, without loading it.
+     *
+     * @param key the key
+     * @return the stage or null if the value is not cached
+     */
+    public CompletionStage<V> getIfPresent(K key) {
+        requireNonNull(key, "key must not be null");
+        long now = expiring ? ticker.getAsLong() : 0L;
+        Entry<V> entry = map.get(key);
+        if (entry != null && isAlive(key, entry, now)) {
+            hits.increment();
+            entry.touch(accessClock);
+            return entry.dependent();
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Removes the value from the cache. A pending load is not cancelled, but its result is not cached.
+     */
+    public void invalidate(K key) {
+        map.remove(requireNonNull(key, "key must not be null"));
+    }
+
+    /**
+     * Removes all values from the cache.
+     */
+    public void invalidateAll() {
+        map.clear();
+    }
+
+    private CompletionStage<V> load(K key, long now) {
+        Entry<V> entry = new Entry<>();
+        Entry<V> existing;
+        // the stage is created only by the request which claims the key, losers of the race do not leave pending stages
+        while ((existing = map.computeIfAbsent(key, k -> entry.claim(factory.createCompletionStage()))) != entry) {
+            if (isAlive(key, existing, now)) {
+                hits.increment();
+                existing.touch(accessClock);
+                return existing.dependent();
+            }
+        }
+        misses.increment();
+        entry.accessTime = ACCESS_CLOCK.incrementAndGet(this);
+        evictIfNeeded();
+
+        long start = ticker.getAsLong();
+
+        CompletionStage<? extends V> loaded;
+        try {
+            loaded = requireNonNull(loader.apply(key), "loader returned null");
+        } catch (Throwable e) {
+            loadFailed(key, entry, start, e);
+            return entry.dependent();
+        }
+        loaded.whenComplete((value, failure) -> {
+            if (failure == null) {
+                loadSucceeded(entry, start, value);
+            } else {
+                loadFailed(key, entry, start, failure);
+            }
+        });
+        return entry.dependent();
+    }
+
+    private void loadSucceeded(Entry<V> entry, long start, V value) {
+        long now = ticker.getAsLong();
+        loadNanos.add(now - start);
+        loadSuccesses.increment();
+        entry.writeTime = now;
+        entry.loaded = true;
+        entry.stage.complete(value);
+    }
+
+    private void loadFailed(K key, Entry<V> entry, long start, Throwable failure) {
+        loadNanos.add(ticker.getAsLong() - start);
+        loadFailures.increment();
+        // removed first, so that a request triggered by the failure loads the value again
+        map.remove(key, entry);
+        entry.stage.completeExceptionally(failure);
+    }
+
+    /**
+     * Returns false and removes the entry if it has expired.
+     */
+    private boolean isAlive(K key, Entry<V> entry, long now) {
+        if (isExpired(entry, now)) {
+            if (map.remove(key, entry)) {
+                expirations.increment();
+            }
+            return false;
+        }
+        return true;
+    }
+
+    private boolean isExpired(Entry<V> entry, long now) {
+        return expiring && entry.loaded && now - entry.writeTime >= expireAfterWriteNanos;
+    }
+
+    private void evictIfNeeded() {
+        // the thread holding the lock evicts until the cache fits, others do not wait for it
+        if (map.size() > maximumSize && evictionLock.tryLock()) {
+            try {
+                while (map.size() > maximumSize && evictOne()) {
+                    // continue
+                }
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Evicts the least recently used loaded entry out of a sample, an expired entry is evicted right away.
+     *
+     * @return false if there is no entry to evict
+     */
+    private boolean evictOne() {
+        long now = expiring ? ticker.getAsLong() : 0L;
+        K victimKey = null;
+        Entry<V> victim = null;
+        for (int i = 0; i < SAMPLE_SIZE; i++) {
+            if (evictionCursor == null || !evictionCursor.hasNext()) {
+                evictionCursor = map.entrySet().iterator();
+                if (!evictionCursor.hasNext()) {
+                    break;
+                }
+            }
+            Map.Entry<K, Entry<V>> candidate = evictionCursor.next();
+            Entry<V> entry = candidate.getValue();
+            if (!entry.loaded) {
+                continue;
+            }
+            if (isExpired(entry, now)) {
+                if (map.remove(candidate.getKey(), entry)) {
+                    expirations.increment();
+                }
+                return true;
+            }
+            if (victim == null || entry.accessTime < victim.accessTime) {
+                victimKey = candidate.getKey();
+                victim = entry;
+            }
+        }
+        if (victim == null) {
+            return false;
+        }
+        if (map.remove(victimKey, victim)) {
+            evictions.increment();
+        }
+        return true;
+    }
+
+    /**
+     * Number of entries, including the ones being loaded.
+     */
+    @Override
+    public long getSize() {
+        return map.mappingCount();
+    }
+
+    /**
+     * Number of requests which found the value cached or being loaded.
+     */
+    @Override
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Number of requests which did not find the value.
+     */
+    @Override
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Ratio of hits to all requests.
+     */
+    @Override
+    public double getHitRate() {
+        long hitCount = hits.sum();
+        long requests = hitCount + misses.sum();
+        return requests == 0 ? 0.0 : (double) hitCount / requests;
+    }
+
+    /**
+     * Number of values loaded successfully.
+     */
+    @Override
+    public long getLoadSuccessCount() {
+        return loadSuccesses.sum();
+    }
+
+    /**
+     * Number of loads that failed.
+     */
+    @Override
+    public long getLoadFailureCount() {
+        return loadFailures.sum();
+    }
+
+    /**
+     * Average time from calling the loader to completion of the loaded stage, failed loads included.
+     */
+    @Override
+    public double getAverageLoadTimeMicros() {
+        long count = loadSuccesses.sum() + loadFailures.sum();
+        return count == 0 ? 0.0 : (double) loadNanos.sum() / count / 1_000;
+    }
+
+    /**
+     * Number of entries evicted because the cache was full.
+     */
+    @Override
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Number of entries removed because they expired.
+     */
+    @Override
+    public long getExpirationCount() {
+        return expirations.sum();
+    }
+
+    /**
+     * Registers the statistics in the platform MBean server as
+     * {@code net.javacrumbs.completionstage:type=AsyncCache,name=<name>}.
+     *
+     * @param name name distinguishing the caches
+     * @return name of the registered MBean, use it to unregister the MBean
+     * @throws IllegalStateException if the MBean can not be registered, e.g. the name is already taken
+     */
+    public ObjectName registerMBean(String name) {
+        try {
+            ObjectName objectName = new ObjectName(DOMAIN + ":type=AsyncCache,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            return objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException("Can not register cache " + name, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "AsyncCache{size=" + getSize() + ", hits=" + getHitCount() + ", misses=" + getMissCount()
+            + ", evictions=" + getEvictionCount() + ", expirations=" + getExpirationCount() + "}";
+    }
+
+    private static final class Entry<V> {
+        // set before the entry is published in the map, never exposed to the callers
+        CompletableCompletionStage<V> stage;
+        // value of the access clock
+        volatile long accessTime;
+        // written before loaded is set
+        long writeTime;
+        volatile boolean loaded;
+
+        Entry<V> claim(CompletableCompletionStage<V> stage) {
+            this.stage = stage;
+            return this;
+        }
+
+        CompletionStage<V> dependent() {
+            return stage.thenApply(Function.identity());
+        }
+
+        void touch(long clock) {
+            // hot entries are written only once per clock tick
+            if (accessTime != clock) {
+                accessTime = clock;
+            }
+        }
+    }
+}
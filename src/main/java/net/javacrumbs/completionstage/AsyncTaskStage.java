@@ -0,0 +1,160 @@
+/**
+ * Copyright 2009-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.completionstage;
+
+import net.javacrumbs.completionstage.spi.CompletableCompletionStageFactory;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.function.Supplier;
+
+/**
+ * Stage completed by a task running in an executor. The stage is the task itself, so submitting a task
+ * allocates just this one object.
+ */
+abstract class AsyncTaskStage<T> extends SimpleCompletionStage<T> implements Runnable {
+
+    private AsyncTaskStage(Executor defaultExecutor, Executor sameThreadExecutor, CompletableCompletionStageFactory completionStageFactory) {
+        super(defaultExecutor, sameThreadExecutor, completionStageFactory);
+    }
+
+    static <T> AsyncTaskStage<T> supply(Supplier<T> supplier, Executor defaultExecutor, Executor sameThreadExecutor,
+                                        CompletableCompletionStageFactory completionStageFactory) {
+        return new SupplyStage<>(supplier, defaultExecutor, sameThreadExecutor, completionStageFactory);
+    }
+
+    static <T> AsyncTaskStage<T> lazySupply(Supplier<T> supplier, Executor executor, Executor defaultExecutor, Executor sameThreadExecutor,
+                                            CompletableCompletionStageFactory completionStageFactory) {
+        return new LazySupplyStage<>(supplier, executor, defaultExecutor, sameThreadExecutor, completionStageFactory);
+    }
+
+    static AsyncTaskStage<Void> run(Runnable runnable, Executor defaultExecutor, Executor sameThreadExecutor,
+                                    CompletableCompletionStageFactory completionStageFactory) {
+        return new RunStage(runnable, defaultExecutor, sameThreadExecutor, completionStageFactory);
+    }
+
+    @Override
+    public final void run() {
+        try {
+            complete(compute());
+        } catch (Throwable e) {
+            completeExceptionally(wrapException(e));
+        }
+    }
+
+    protected abstract T compute();
+
+    private static final class SupplyStage<T> extends AsyncTaskStage<T> {
+        private final Supplier<T> supplier;
+
+        private SupplyStage(Supplier<T> supplier, Executor defaultExecutor, Executor sameThreadExecutor,
+                            CompletableCompletionStageFactory completionStageFactory) {
+            super(defaultExecutor, sameThreadExecutor, completionStageFactory);
+            this.supplier = supplier;
+        }
+
+        @Override
+        protected T compute() {
+            return supplier.get();
+        }
+    }
+
+    private static final class RunStage extends AsyncTaskStage<Void> {
+        private final Runnable runnable;
+
+        private RunStage(Runnable runnable, Executor defaultExecutor, Executor sameThreadExecutor,
+                         CompletableCompletionStageFactory completionStageFactory) {
+            super(defaultExecutor, sameThreadExecutor, completionStageFactory);
+            this.runnable = runnable;
+        }
+
+        @Override
+        protected Void compute() {
+            runnable.run();
+            return null;
+        }
+    }
+
+    /**
+     * Submits the task only when the result is needed for the first time - a callback is added or
+     * a thread starts waiting for the result. The task is submitted at most once. A stage completed or cancelled
+     * before that never submits it.
+     */
+    private static final class LazySupplyStage<T> extends AsyncTaskStage<T> {
+        @SuppressWarnings("rawtypes")
+        private static final AtomicIntegerFieldUpdater<LazySupplyStage> STARTED =
+                AtomicIntegerFieldUpdater.newUpdater(LazySupplyStage.class, "started");
+
+        private final Supplier<T> supplier;
+        private final Executor executor;
+
+        private volatile int started;
+
+        private LazySupplyStage(Supplier<T> supplier, Executor executor, Executor defaultExecutor, Executor sameThreadExecutor,
+                                CompletableCompletionStageFactory completionStageFactory) {
+            super(defaultExecutor, sameThreadExecutor, completionStageFactory);
+            this.supplier = supplier;
+            this.executor = executor;
+        }
+
+        @Override
+        protected T compute() {
+            return supplier.get();
+        }
+
+        @Override
+        void addCallback(CallbackRegistry.Callback<? super T> callback) {
+            super.addCallback(callback);
+            // metrics and timeouts only observe the stage, they do not need the result
+            if (!(callback instanceof MetricsCallback || callback instanceof SimpleCompletionStage.TimeoutCallback)) {
+                start();
+            }
+        }
+
+        @Override
+        public T join() {
+            start();
+            return super.join();
+        }
+
+        @Override
+        public T get() throws InterruptedException, ExecutionException {
+            start();
+            return super.get();
+        }
+
+        @Override
+        public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            start();
+            return super.get(timeout, unit);
+        }
+
+        private void start() {
+            if (started == 0 && !isDone() && STARTED.compareAndSet(this, 0, 1)) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    // reported as the result, the consumer asking for it did not submit anything
+                    completeExceptionally(wrapException(e));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/**
+ * Copyright 2009-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.completionstage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Gathers keys requested one by one into batches loaded by a single call of a bulk function. A batch is dispatched
+ * when it reaches the maximal size or when the time window since the first key of the batch elapses, whichever
+ * comes first. Keys requested more than once within a batch are passed to the bulk function only once. Every request
+ * gets its own stage, so completing or cancelling it does not affect the other requests for the same key.
+ * <p>
+ * The window is measured by the timer of the factory and is precise to 10 ms. The bulk function is called by the
+ * thread filling the batch up, by {@link #dispatch()}, or by a task running in the default executor of the factory
+ * when the window elapses.
+ * <p>
+ * Each stage is completed with the value the bulk function returned for its key. If the returned map does not
+ * contain the key, the stage is completed with {@link NoSuchElementException}. If the bulk function fails, all the
+ * stages of the batch fail with the same exception.
+ * <p>
+ * Usage
+ * <pre>
+ *     BatchLoader&lt;String, User&gt; loader = new BatchLoader&lt;&gt;(factory, userService::loadUsers, 100, 10, TimeUnit.MILLISECONDS);
+ *     loader.load("john").thenAccept(user -&gt; ...);
+ * </pre>
+ *
+ * @param <K> type of keys
+ * @param <V> type of values
+ */
+public final class BatchLoader<K, V> {
+    private final CompletionStageFactory factory;
+    private final Function<? super List<K>, ? extends CompletionStage<? extends Map<K, ? extends V>>> bulkLoader;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+
+    private final Object lock = new Object();
+    // guarded by lock
+    private Batch batch;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder keys = new LongAdder();
+
+    /**
+     * Creates loader.
+     *
+     * @param factory      factory creating the stages and providing the timer
+     * @param bulkLoader   function loading values of a batch of distinct keys
+     * @param maxBatchSize maximal number of distinct keys in a batch
+     * @param maxDelay     time window after which a batch is dispatched even if it is not full
+     * @param unit         unit of maxDelay
+     */
+    public BatchLoader(CompletionStageFactory factory, Function<? super List<K>, ? extends CompletionStage<? extends Map<K, ? extends V>>> bulkLoader,
+                       int maxBatchSize, long maxDelay, TimeUnit unit) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("maxBatchSize has to be positive, was " + maxBatchSize);
+        }
+        if (maxDelay <= 0) {
+            throw new IllegalArgumentException("maxDelay has to be positive, was " + maxDelay);
+        }
+        this.factory = requireNonNull(factory, "factory must not be null");
+        this.bulkLoader = requireNonNull(bulkLoader, "bulkLoader must not be null");
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = requireNonNull(unit, "unit must not be null").toNanos(maxDelay);
+    }
+
+    /**
+     * Adds the key to the current batch.
+     *
+     * @param key the key
+     * @return stage completed with the value once the batch has been loaded
+     */
+    public CompletionStage<V> load(K key) {
+        requireNonNull(key, "key must not be null");
+        requests.increment();
+        Batch full = null;
+        CompletableCompletionStage<V> stage;
+        synchronized (lock) {
+            if (batch == null) {
+                batch = new Batch();
+                batch.timeout = factory.getTimer().schedule(batch, maxDelayNanos, TimeUnit.NANOSECONDS);
+            }
+            stage = batch.stages.get(key);
+            if (stage == null) {
+                stage = factory.createCompletionStage();
+                batch.stages.put(key, stage);
+                if (batch.stages.size() >= maxBatchSize) {
+                    full = batch;
+                    batch = null;
+                }
+            }
+        }
+        if (full != null) {
+            full.timeout.cancel();
+            loadBatch(full);
+        }
+        return stage.thenApply(Function.identity());
+    }
+
+    /**
+     * Adds all the keys to the current batch, they may be split into more batches if the batch gets full.
+     *
+     * @param keys the keys
+     * @return stage completed with the values in the order of the keys
+     */
+    public CompletionStage<List<V>> loadAll(Collection<? extends K> keys) {
+        List<CompletionStage<V>> stages = new ArrayList<>(keys.size());
+        for (K key : keys) {
+            stages.add(load(key));
+        }
+        return factory.allOf(stages);
+    }
+
+    /**
+     * Dispatches the current batch without waiting for the time window to elapse.
+     */
+    public void dispatch() {
+        Batch current;
+        synchronized (lock) {
+            current = batch;
+            batch = null;
+        }
+        if (current != null) {
+            current.timeout.cancel();
+            loadBatch(current);
+        }
+    }
+
+    private void expire(Batch expired) {
+        synchronized (lock) {
+            if (batch != expired) {
+                // already dispatched
+                return;
+            }
+            batch = null;
+        }
+        loadBatch(expired);
+    }
+
+    private void loadBatch(Batch batch) {
+        batches.increment();
+        keys.add(batch.stages.size());
+        CompletionStage<? extends Map<K, ? extends V>> loaded;
+        try {
+            loaded = requireNonNull(bulkLoader.apply(new ArrayList<>(batch.stages.keySet())), "bulkLoader returned null");
+        } catch (Throwable e) {
+            batch.completeExceptionally(e);
+            return;
+        }
+        loaded.whenComplete((values, failure) -> {
+            if (failure != null) {
+                batch.completeExceptionally(failure);
+            } else if (values == null) {
+                batch.completeExceptionally(new NullPointerException("bulkLoader completed with null"));
+            } else {
+                batch.complete(values);
+            }
+        });
+    }
+
+    /**
+     * Number of keys requested, duplicates included.
+     */
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    /**
+     * Number of calls of the bulk function.
+     */
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    /**
+     * Number of distinct keys passed to the bulk function.
+     */
+    public long getKeyCount() {
+        return keys.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "BatchLoader{requests=" + getRequestCount() + ", batches=" + getBatchCount() + ", keys=" + getKeyCount() + "}";
+    }
+
+    private final class Batch implements HashedWheelTimer.Task {
+        // insertion order, so that the bulk function gets the keys in the order they were requested
+        private final Map<K, CompletableCompletionStage<V>> stages = new LinkedHashMap<>();
+        // written under the lock before the batch can be dispatched
+        private HashedWheelTimer.Timeout timeout;
+
+        @Override
+        public void expire() {
+            BatchLoader.this.expire(this);
+        }
+
+        private void complete(Map<K, ? extends V> values) {
+            stages.forEach((key, stage) -> {
+                if (values.containsKey(key)) {
+                    stage.complete(values.get(key));
+                } else {
+                    stage.completeExceptionally(new NoSuchElementException("No value loaded for key " + key));
+                }
+            });
+        }
+
+        private void completeExceptionally(Throwable failure) {
+            stages.values().forEach(stage -> stage.completeExceptionally(failure));
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright 2009-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.completionstage;
+
+import java.util.concurrent.Executor;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Executor whose dependents may be submitted in slices. When a stage with many dependents completes, the dependents
+ * running on this executor are cut into a few slices and each slice is submitted to the delegate as one task, the
+ * dependents of a slice run one after another. This saves queue operations on a pool running short non-blocking
+ * tasks, but serializes blocking ones, so do not use it with thread-per-task or virtual thread executors or
+ * with dependents which block. Dependents on other executors are always submitted one by one.
+ * <p>
+ * Usage
+ * <pre>
+ *     CompletionStageFactory factory = new CompletionStageFactory(new BatchingExecutor(threadPool));
+ * </pre>
+ */
+public final class BatchingExecutor implements Executor {
+    private final Executor delegate;
+
+    /**
+     * Creates executor.
+     * @param delegate executor the tasks and slices are submitted to
+     */
+    public BatchingExecutor(Executor delegate) {
+        this.delegate = requireNonNull(delegate, "delegate");
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        delegate.execute(command);
+    }
+
+    @Override
+    public String toString() {
+        return "BatchingExecutor{delegate=" + delegate + "}";
+    }
+}
@@ -1,12 +1,12 @@
 /**
  * Copyright 2009-2015 the original author or authors.
- * <p>
+ *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
  * You may obtain a copy of the License at
- * <p>
- * http://www.apache.org/licenses/LICENSE-2.0
- * <p>
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
  * Unless required by applicable law or agreed to in writing, software
  * distributed under the License is distributed on an "AS IS" BASIS,
  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
@@ -15,24 +15,34 @@
  */
 package net.javacrumbs.completionstage;
 
-import java.util.LinkedList;
 import java.util.Objects;
-import java.util.Queue;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.Consumer;
 
 /**
- * Registry for Consumer callbacks. Works as a state machine switching between InitialState, IntermediateState, Success and Failure state.
+ * Registry for callbacks. Works as a state machine switching between InitialState, single Callback, IntermediateState,
+ * Success and Failure state.
  * <p/>
  * <p>Inspired by {@code org.springframework.util.concurrent.ListenableFutureCallbackRegistry} and
  * {@code com.google.common.util.concurrent.ExecutionList}</p>
  * <p>
- * Explicit synchronization only around blocks responsible for state switching.
+ * Lock free. The state is switched by compare-and-set on a single field, callbacks of IntermediateState are kept
+ * in a Treiber stack which is closed once the result is known.
  */
-final class CallbackRegistry<T> {
-    private State<T> state = InitialState.instance();
+class CallbackRegistry<T> {
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<CallbackRegistry, State> STATE =
+            AtomicReferenceFieldUpdater.newUpdater(CallbackRegistry.class, State.class, "state");
 
-    private final Object mutex = new Object();
+    /**
+     * Number of times a waiting thread checks for the result before it parks, zero by default. Spinning can save
+     * the park/unpark round trip when results arrive within microseconds, at the cost of burning CPU.
+     */
+    private static final int WAIT_SPINS = Integer.getInteger("net.javacrumbs.completionstage.waitSpins", 0);
+
+    private volatile State<T> state = InitialState.instance();
 
     /**
      * Adds the given callbacks to this registry.
@@ -42,8 +52,18 @@ final class CallbackRegistry<T> {
         Objects.requireNonNull(failureCallback, "'failureCallback' must not be null");
         Objects.requireNonNull(executor, "'executor' must not be null");
 
-        synchronized (mutex) {
-            state = state.addCallbacks(successCallback, failureCallback, executor);
+        addCallback(new ConsumerCallback<>(successCallback, failureCallback, executor));
+    }
+
+    /**
+     * Adds the given callback to this registry. The callback can be added only to one registry and only once.
+     */
+    @SuppressWarnings("unchecked")
+    void addCallback(Callback<? super T> callback) {
+        // callback accepting a supertype of T is able to accept T
+        Callback<T> typedCallback = (Callback<T>) callback;
+        while (!state.addCallback(this, typedCallback)) {
+            // state has been changed by someone else, try again with the new one
         }
     }
 
@@ -54,17 +74,30 @@ final class CallbackRegistry<T> {
      * @return true if this result will be used (first result registered)
      */
     boolean success(T result) {
-        State<T> oldState;
-        synchronized (mutex) {
-            if (state.isCompleted()) {
-                return false;
-            }
-            oldState = state;
-            state = state.getSuccessState(result);
+        return success(new SuccessState<>(result));
+    }
+
+    /**
+     * Sets an int result without boxing it. Callbacks get null, they read the value by {@link #getIntResult()}.
+     */
+    boolean successInt(int result) {
+        return success(new IntSuccessState<>(result));
+    }
+
+    /**
+     * Sets a long result without boxing it. Callbacks get null, they read the value by {@link #getLongResult()}.
+     */
+    boolean successLong(long result) {
+        return success(new LongSuccessState<>(result));
+    }
+
+    private boolean success(SuccessState<T> successState) {
+        State<T> oldState = switchToCompletedState(successState);
+        if (oldState == null) {
+            return false;
         }
-        oldState.callSuccessCallbacks(result);
+        oldState.callSuccessCallbacks(successState.result);
         return true;
-
     }
 
     /**
@@ -74,34 +107,177 @@ final class CallbackRegistry<T> {
      * @return true if this result will be used (first result registered)
      */
     boolean failure(Throwable failure) {
-        State<T> oldState;
-        synchronized (mutex) {
-            if (state.isCompleted()) {
-                return false;
-            }
-            oldState = state;
-            state = state.getFailureState(failure);
+        State<T> oldState = switchToCompletedState(new FailureState<>(failure));
+        if (oldState == null) {
+            return false;
         }
         oldState.callFailureCallbacks(failure);
         return true;
     }
 
     /**
-     * State of the registry. All subclasses are meant to be used form a synchronized block and are NOT
-     * thread safe on their own.
+     * Returns true if the result is known.
      */
-    private static abstract class State<S> {
-        protected abstract State<S> addCallbacks(Consumer<? super S> successCallback, Consumer<Throwable> failureCallback, Executor executor);
+    boolean isDone() {
+        return state.isCompleted();
+    }
 
-        protected State<S> getSuccessState(S result) {
-            throw new IllegalStateException("success method should not be called multiple times");
+    boolean isCompletedExceptionally() {
+        return state instanceof FailureState;
+    }
+
+    /**
+     * Returns the result. To be called only once the registry has been completed successfully.
+     */
+    T getResult() {
+        return ((SuccessState<T>) state).result;
+    }
+
+    /**
+     * Returns the result set by {@link #successInt(int)}.
+     */
+    int getIntResult() {
+        return ((IntSuccessState<T>) state).value;
+    }
+
+    /**
+     * Returns the result set by {@link #successLong(long)}.
+     */
+    long getLongResult() {
+        return ((LongSuccessState<T>) state).value;
+    }
+
+    /**
+     * Returns the failure. To be called only once the registry has been completed exceptionally.
+     */
+    Throwable getFailure() {
+        return ((FailureState<T>) state).failure;
+    }
+
+    /**
+     * Blocks until the result is known. Interrupts do not stop the waiting, the interrupt status is restored
+     * once the result is known.
+     */
+    void awaitUninterruptibly() {
+        try {
+            await(false, false, 0L);
+        } catch (InterruptedException e) {
+            // can not happen, waiting is not interruptible
+            throw new IllegalStateException(e);
         }
+    }
 
-        protected void callSuccessCallbacks(S result) {
+    /**
+     * Blocks until the result is known or the thread is interrupted.
+     */
+    void await() throws InterruptedException {
+        await(true, false, 0L);
+    }
+
+    /**
+     * Blocks until the result is known, the timeout elapses or the thread is interrupted.
+     *
+     * @return false if the timeout elapsed before the result was known
+     */
+    boolean await(long timeoutNanos) throws InterruptedException {
+        return await(true, true, timeoutNanos);
+    }
+
+    private boolean await(boolean interruptible, boolean timed, long nanos) throws InterruptedException {
+        for (int i = 0; i < WAIT_SPINS; i++) {
+            if (isDone()) {
+                return true;
+            }
+        }
+        while (!isDone() && TrampolineExecutor.runQueuedCommand()) {
+            // the result may depend on callbacks queued by the trampoline of this thread
         }
+        if (isDone()) {
+            return true;
+        }
+        long deadline = timed ? System.nanoTime() + nanos : 0L;
+        Waiter<T> waiter = new Waiter<>(Thread.currentThread());
+        addCallback(waiter);
+        boolean interrupted = false;
+        try {
+            while (!isDone()) {
+                if (timed) {
+                    nanos = deadline - System.nanoTime();
+                    if (nanos <= 0L) {
+                        return false;
+                    }
+                    LockSupport.parkNanos(this, nanos);
+                } else {
+                    LockSupport.park(this);
+                }
+                if (Thread.interrupted()) {
+                    if (interruptible) {
+                        throw new InterruptedException();
+                    }
+                    interrupted = true;
+                }
+            }
+            return true;
+        } finally {
+            waiter.thread = null;
+            if (!isDone()) {
+                // timed out or interrupted, do not let the waiters pile up when the registry is polled
+                removeCancelledWaiters(waiter);
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
 
-        protected State<S> getFailureState(Throwable failure) {
-            throw new IllegalStateException("failure method should not be called multiple times");
+    /**
+     * Unlinks waiters whose threads do not wait anymore, similar to cleanStack of CompletableFuture.
+     */
+    private void removeCancelledWaiters(Waiter<T> waiter) {
+        State<T> current = state;
+        if (current == waiter && compareAndSetState(waiter, InitialState.instance())) {
+            return;
+        }
+        // a callback may have been added to the waiter in the meantime, a completed registry holds no waiters
+        current = state;
+        if (current instanceof IntermediateState) {
+            ((IntermediateState<T>) current).removeCancelledWaiters();
+        }
+    }
+
+    /**
+     * Switches to the completed state. Fails fast if the registry has been already completed.
+     *
+     * @return the state the registry had been in before the switch or null if it has been already completed
+     */
+    private State<T> switchToCompletedState(State<T> completedState) {
+        State<T> oldState;
+        do {
+            oldState = state;
+            if (oldState.isCompleted()) {
+                return null;
+            }
+        } while (!compareAndSetState(oldState, completedState));
+        return oldState;
+    }
+
+    private boolean compareAndSetState(State<T> expected, State<T> newState) {
+        return STATE.compareAndSet(this, expected, newState);
+    }
+
+    /**
+     * State of the registry. All subclasses are immutable or thread safe on their own, the registry switches
+     * between them using compare-and-set.
+     */
+    private static abstract class State<S> {
+        /**
+         * Adds the callback.
+         *
+         * @return false if the registry is no longer in this state and the caller has to try again
+         */
+        protected abstract boolean addCallback(CallbackRegistry<S> registry, Callback<S> callback);
+
+        protected void callSuccessCallbacks(S result) {
         }
 
         protected void callFailureCallbacks(Throwable failure) {
@@ -120,20 +296,9 @@ final class CallbackRegistry<T> {
         private static final InitialState<Object> instance = new InitialState<>();
 
         @Override
-        protected State<S> addCallbacks(Consumer<? super S> successCallback, Consumer<Throwable> failureCallback, Executor executor) {
-            IntermediateState<S> intermediateState = new IntermediateState<>();
-            intermediateState.addCallbacks(successCallback, failureCallback, executor);
-            return intermediateState;
-        }
-
-        @Override
-        protected State<S> getSuccessState(S result) {
-            return new SuccessState<>(result);
-        }
-
-        @Override
-        protected State<S> getFailureState(Throwable failure) {
-            return new FailureState<>(failure);
+        protected boolean addCallback(CallbackRegistry<S> registry, Callback<S> callback) {
+            // most stages have exactly one dependent, the callback itself serves as the state
+            return registry.compareAndSetState(this, callback);
         }
 
         @Override
@@ -148,40 +313,78 @@ final class CallbackRegistry<T> {
     }
 
     /**
-     * Result is not known yet.
+     * Result is not known yet and there are at least two callbacks. Callbacks are pushed to a stack which is closed
+     * when the result arrives.
      */
     private static class IntermediateState<S> extends State<S> {
-        private final Queue<CallbackHolder<? super S>> callbacks = new LinkedList<>();
+        @SuppressWarnings("rawtypes")
+        private static final AtomicReferenceFieldUpdater<IntermediateState, Callback> HEAD =
+                AtomicReferenceFieldUpdater.newUpdater(IntermediateState.class, Callback.class, "head");
 
-        @Override
-        protected State<S> addCallbacks(Consumer<? super S> successCallback, Consumer<Throwable> failureCallback, Executor executor) {
-            callbacks.add(new CallbackHolder<>(successCallback, failureCallback, executor));
-            return this;
+        /**
+         * Marks the stack as closed, no callbacks can be pushed to it anymore.
+         */
+        private static final Callback<Object> CLOSED = new ConsumerCallback<>(null, null, null);
+
+        private volatile Callback<S> head;
+
+        private IntermediateState(Callback<S> first, Callback<S> second) {
+            Callback.NEXT.lazySet(second, first);
+            this.head = second;
         }
 
         @Override
-        protected State<S> getSuccessState(S result) {
-            return new SuccessState<>(result);
+        protected boolean addCallback(CallbackRegistry<S> registry, Callback<S> callback) {
+            Callback<S> currentHead;
+            do {
+                currentHead = head;
+                if (currentHead == CLOSED) {
+                    // the result has arrived in the meantime, registry is already in a completed state
+                    return false;
+                }
+                Callback.NEXT.lazySet(callback, currentHead);
+            } while (!HEAD.compareAndSet(this, currentHead, callback));
+            return true;
         }
 
         @Override
         protected void callSuccessCallbacks(S result) {
-            // no need to remove callbacks from the queue, this instance will be thrown away at once
-            for (CallbackHolder<? super S> callback : callbacks) {
-                callback.callSuccessCallback(result);
+            Callback<S> callback = close();
+            Batch batch = Batch.start(callback);
+            try {
+                while (callback != null) {
+                    // the callback may be executed at once or linked to a batch, read the link first
+                    Callback<S> next = callback.next;
+                    if (batch != null) {
+                        callback.markBatched();
+                    }
+                    callback.callSuccessCallback(result);
+                    callback = next;
+                }
+            } finally {
+                if (batch != null) {
+                    batch.submit();
+                }
             }
         }
 
-        @Override
-        protected State<S> getFailureState(Throwable failure) {
-            return new FailureState<>(failure);
-        }
-
         @Override
         protected void callFailureCallbacks(Throwable failure) {
-            // no need to remove callbacks from the queue, this instance will be thrown away at once
-            for (CallbackHolder<? super S> callback : callbacks) {
-                callback.callFailureCallback(failure);
+            Callback<S> callback = close();
+            Batch batch = Batch.start(callback);
+            try {
+                while (callback != null) {
+                    Callback<S> next = callback.next;
+                    if (batch != null) {
+                        callback.markBatched();
+                    }
+                    callback.callFailureCallback(failure);
+                    callback = next;
+                }
+            } finally {
+                if (batch != null) {
+                    batch.submit();
+                }
             }
         }
 
@@ -189,12 +392,57 @@ final class CallbackRegistry<T> {
         protected boolean isCompleted() {
             return false;
         }
+
+        /**
+         * Unlinks waiters which do not wait anymore, like cleanStack of CompletableFuture. Dead waiters on top are
+         * popped from the head, the others are skipped by compare-and-set of the link pointing to them, so pushing
+         * and closing never wait for the cleaning. A waiter may stay linked when more threads clean at once,
+         * it is removed by the next cleaning or dropped together with the stack once the result arrives.
+         */
+        @SuppressWarnings("unchecked")
+        private void removeCancelledWaiters() {
+            Callback<S> callback;
+            while ((callback = head) != null && callback != CLOSED && isCancelledWaiter(callback)) {
+                HEAD.compareAndSet(this, callback, callback.next);
+            }
+            while (callback != null && head != CLOSED) {
+                Callback<S> next = callback.next;
+                if (next != null && isCancelledWaiter(next)) {
+                    // the waiter keeps its link, a thread standing on it still gets to the rest of the stack
+                    Callback.NEXT.compareAndSet(callback, next, next.next);
+                } else {
+                    callback = next;
+                }
+            }
+        }
+
+        private static boolean isCancelledWaiter(Callback<?> callback) {
+            return callback instanceof Waiter && ((Waiter<?>) callback).thread == null;
+        }
+
+        /**
+         * Closes the stack and returns its callbacks in the order in which they have been registered.
+         */
+        @SuppressWarnings("unchecked")
+        private Callback<S> close() {
+            Callback<S> callback = HEAD.getAndSet(this, CLOSED);
+            // nobody can push to the stack now, we can reverse it in place. A concurrent removeCancelledWaiters only
+            // swaps a link to a dead waiter which has not been reversed yet, the reversal never leads to such a waiter.
+            Callback<S> reversed = null;
+            while (callback != null) {
+                Callback<S> next = callback.next;
+                Callback.NEXT.lazySet(callback, reversed);
+                reversed = callback;
+                callback = next;
+            }
+            return reversed;
+        }
     }
 
     /**
      * Holds the result.
      */
-    private static final class SuccessState<S> extends State<S> {
+    private static class SuccessState<S> extends State<S> {
         private final S result;
 
         private SuccessState(S result) {
@@ -202,9 +450,39 @@ final class CallbackRegistry<T> {
         }
 
         @Override
-        protected State<S> addCallbacks(Consumer<? super S> successCallback, Consumer<Throwable> failureCallback, Executor executor) {
-            callCallback(successCallback, result, executor);
-            return this;
+        protected boolean addCallback(CallbackRegistry<S> registry, Callback<S> callback) {
+            // dispatched by the registering thread, not by the completion of the stage
+            HopElidingExecutor suspended = HopElidingExecutor.suspend();
+            try {
+                callback.callSuccessCallback(result);
+            } finally {
+                HopElidingExecutor.resume(suspended);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Holds an unboxed int, the result seen by callbacks is null.
+     */
+    private static final class IntSuccessState<S> extends SuccessState<S> {
+        private final int value;
+
+        private IntSuccessState(int value) {
+            super(null);
+            this.value = value;
+        }
+    }
+
+    /**
+     * Holds an unboxed long, the result seen by callbacks is null.
+     */
+    private static final class LongSuccessState<S> extends SuccessState<S> {
+        private final long value;
+
+        private LongSuccessState(long value) {
+            super(null);
+            this.value = value;
         }
     }
 
@@ -219,35 +497,359 @@ final class CallbackRegistry<T> {
         }
 
         @Override
-        protected State<S> addCallbacks(Consumer<? super S> successCallback, Consumer<Throwable> failureCallback, Executor executor) {
-            callCallback(failureCallback, failure, executor);
-            return this;
+        protected boolean addCallback(CallbackRegistry<S> registry, Callback<S> callback) {
+            HopElidingExecutor suspended = HopElidingExecutor.suspend();
+            try {
+                callback.callFailureCallback(failure);
+            } finally {
+                HopElidingExecutor.resume(suspended);
+            }
+            return true;
         }
     }
 
 
-    private static final class CallbackHolder<S> {
-        private final Consumer<S> successCallback;
-        private final Consumer<Throwable> failureCallback;
+    /**
+     * Callback registered in the registry. It is also the Runnable submitted to the executor, so that only one object is
+     * allocated per dependent stage. Subclasses are purpose-built for each operation. Every instance can be
+     * added to a registry only once.
+     * <p>
+     * If it is the only callback, it is used directly as the state of the registry - result is not known yet
+     * and this is the only dependent. IntermediateState is created only when the second callback arrives.
+     */
+    abstract static class Callback<S> extends State<S> implements Runnable {
         private final Executor executor;
 
-        private CallbackHolder(Consumer<S> successCallback, Consumer<Throwable> failureCallback, Executor executor) {
-            this.successCallback = successCallback;
-            this.failureCallback = failureCallback;
+        @SuppressWarnings("rawtypes")
+        private static final AtomicReferenceFieldUpdater<Callback, Callback> NEXT =
+                AtomicReferenceFieldUpdater.newUpdater(Callback.class, Callback.class, "next");
+
+        /**
+         * Next callback in the stack. Written before the callback is published or after the stack has been closed,
+         * only links to cancelled waiters are swapped by compare-and-set while the stack is open.
+         */
+        private volatile Callback<S> next;
+
+        // written before the callback is submitted to the executor, the executor is responsible for visibility
+        private S result;
+        private Throwable failure;
+        private boolean failed;
+
+        // set by the completing thread when the callback is one of many dependents, see Batch
+        private boolean batched;
+
+        protected Callback(Executor executor) {
             this.executor = executor;
         }
 
+        /**
+         * Hands the result over to the executor. Overridden by callbacks which have to see the result
+         * before deciding whether to run at all.
+         */
         void callSuccessCallback(S result) {
-            callCallback(successCallback, result, executor);
+            this.result = result;
+            dispatch();
         }
 
         void callFailureCallback(Throwable failure) {
-            callCallback(failureCallback, failure, executor);
+            this.failure = failure;
+            this.failed = true;
+            dispatch();
+        }
+
+        private void dispatch() {
+            if (batched && Batch.add(executor, this)) {
+                return;
+            }
+            if (executor instanceof HopElidingExecutor) {
+                ((HopElidingExecutor) executor).executeDependent(this);
+            } else {
+                executor.execute(this);
+            }
+        }
+
+        /**
+         * Returns number of callbacks to be notified after this one. Valid only when called by the first callback
+         * of the registry from {@link #callSuccessCallback} or {@link #callFailureCallback}, before the others are
+         * dispatched.
+         */
+        final int countFollowing() {
+            int count = 0;
+            for (Callback<S> callback = next; callback != null; callback = callback.next) {
+                count++;
+            }
+            return count;
+        }
+
+        /**
+         * Only callbacks on a {@link BatchingExecutor} are batched. Slices run their callbacks one after another,
+         * which would serialize blocking callbacks on other executors.
+         */
+        private void markBatched() {
+            batched = executor instanceof BatchingExecutor;
+        }
+
+        @Override
+        protected final boolean addCallback(CallbackRegistry<S> registry, Callback<S> callback) {
+            return registry.compareAndSetState(this, new IntermediateState<>(this, callback));
+        }
+
+        @Override
+        protected final void callSuccessCallbacks(S result) {
+            callSuccessCallback(result);
         }
+
+        @Override
+        protected final void callFailureCallbacks(Throwable failure) {
+            callFailureCallback(failure);
+        }
+
+        @Override
+        protected final boolean isCompleted() {
+            return false;
+        }
+
+        @Override
+        public final void run() {
+            if (failed) {
+                onFailure(failure);
+            } else {
+                onSuccess(result);
+            }
+        }
+
+        protected abstract void onSuccess(S result);
+
+        protected abstract void onFailure(Throwable failure);
     }
 
-    private static <T> void callCallback(Consumer<T> callback, T value, Executor executor) {
-        executor.execute(() -> callback.accept(value));
+    /**
+     * Callbacks of a stage with many dependents, grouped by executor. Instead of one task per callback, every group
+     * is cut into a few slices and each slice is submitted as one task, so the executor queue is touched only a few
+     * times while large fan-outs are still spread over the whole pool. Callbacks are linked through their
+     * {@code next} field, which is free once the stack has been closed, so the only allocations are the groups and
+     * the slices.
+     * <p>
+     * The batch is bound to the completing thread while its callbacks are being dispatched. Callbacks which have
+     * already been dispatched are never linked again. Only callbacks on a {@link BatchingExecutor} are batched.
+     */
+    private static final class Batch {
+        private static final ThreadLocal<Batch> current = new ThreadLocal<>();
+
+        /**
+         * Minimal number of dependents for which batching is used.
+         */
+        private static final int THRESHOLD = Integer.getInteger("net.javacrumbs.completionstage.batchThreshold", 64);
+
+        private static final int MIN_SLICE_SIZE = 16;
+
+        private static final int MAX_SLICES = 2 * Runtime.getRuntime().availableProcessors();
+
+        private final Batch previous;
+        private Group first;
+
+        private Batch(Batch previous) {
+            this.previous = previous;
+        }
+
+        /**
+         * Starts a batch for the given callbacks.
+         *
+         * @return the batch bound to the current thread or null if there are not enough callbacks to batch
+         */
+        private static Batch start(Callback<?> callbacks) {
+            int count = 0;
+            for (Callback<?> callback = callbacks; callback != null && count < THRESHOLD; callback = callback.next) {
+                if (callback.executor instanceof BatchingExecutor) {
+                    count++;
+                }
+            }
+            if (count < THRESHOLD) {
+                return null;
+            }
+            Batch batch = new Batch(current.get());
+            current.set(batch);
+            return batch;
+        }
+
+        /**
+         * Adds the callback to the batch of the current thread.
+         *
+         * @return false if there is no batch in progress and the callback has to be dispatched directly
+         */
+        private static boolean add(Executor executor, Callback<?> callback) {
+            Batch batch = current.get();
+            if (batch == null) {
+                return false;
+            }
+            batch.group(executor).add(callback);
+            return true;
+        }
+
+        private Group group(Executor executor) {
+            for (Group group = first; group != null; group = group.next) {
+                if (group.executor == executor) {
+                    return group;
+                }
+            }
+            first = new Group(executor, first);
+            return first;
+        }
+
+        /**
+         * Unbinds the batch from the current thread and submits the slices.
+         */
+        private void submit() {
+            if (previous == null) {
+                current.remove();
+            } else {
+                current.set(previous);
+            }
+            for (Group group = first; group != null; group = group.next) {
+                group.submit();
+            }
+        }
+    }
+
+    private static final class Group {
+        private final Executor executor;
+        private final Group next;
+
+        private Callback<?> head;
+        private Callback<?> tail;
+        private int size;
+
+        private Group(Executor executor, Group next) {
+            this.executor = executor;
+            this.next = next;
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private void add(Callback callback) {
+            callback.next = null;
+            if (tail == null) {
+                head = callback;
+            } else {
+                tail.next = callback;
+            }
+            tail = callback;
+            size++;
+        }
+
+        private void submit() {
+            int slices = Math.min(Batch.MAX_SLICES, (size + Batch.MIN_SLICE_SIZE - 1) / Batch.MIN_SLICE_SIZE);
+            int sliceSize = (size + slices - 1) / slices;
+            Callback<?> callback = head;
+            while (callback != null) {
+                Callback<?> sliceHead = callback;
+                for (int i = 1; i < sliceSize && callback.next != null; i++) {
+                    callback = callback.next;
+                }
+                Callback<?> nextSlice = callback.next;
+                callback.next = null;
+                executor.execute(new Slice(sliceHead));
+                callback = nextSlice;
+            }
+        }
     }
 
+    /**
+     * Runs callbacks one after another. Failure of a callback does not prevent the others from being executed.
+     */
+    private static final class Slice implements Runnable {
+        private final Callback<?> head;
+
+        private Slice(Callback<?> head) {
+            this.head = head;
+        }
+
+        @Override
+        public void run() {
+            Throwable failure = null;
+            Callback<?> callback = head;
+            while (callback != null) {
+                Callback<?> next = callback.next;
+                try {
+                    callback.run();
+                } catch (Throwable e) {
+                    if (failure == null) {
+                        failure = e;
+                    } else {
+                        failure.addSuppressed(e);
+                    }
+                }
+                callback = next;
+            }
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            } else if (failure instanceof Error) {
+                throw (Error) failure;
+            } else if (failure != null) {
+                throw new IllegalStateException(failure);
+            }
+        }
+    }
+
+    /**
+     * Adapts a pair of Consumers.
+     */
+    private static final class ConsumerCallback<S> extends Callback<S> {
+        private final Consumer<? super S> successCallback;
+        private final Consumer<Throwable> failureCallback;
+
+        private ConsumerCallback(Consumer<? super S> successCallback, Consumer<Throwable> failureCallback, Executor executor) {
+            super(executor);
+            this.successCallback = successCallback;
+            this.failureCallback = failureCallback;
+        }
+
+        @Override
+        protected void onSuccess(S result) {
+            successCallback.accept(result);
+        }
+
+        @Override
+        protected void onFailure(Throwable failure) {
+            failureCallback.accept(failure);
+        }
+    }
+
+    /**
+     * Thread blocked until the result is known. The waiter unparks the thread directly, no executor is involved.
+     */
+    private static final class Waiter<S> extends Callback<S> {
+        private volatile Thread thread;
+
+        private Waiter(Thread thread) {
+            super(null);
+            this.thread = thread;
+        }
+
+        @Override
+        void callSuccessCallback(S result) {
+            wakeUp();
+        }
+
+        @Override
+        void callFailureCallback(Throwable failure) {
+            wakeUp();
+        }
+
+        private void wakeUp() {
+            Thread waitingThread = thread;
+            if (waitingThread != null) {
+                LockSupport.unpark(waitingThread);
+            }
+        }
+
+        @Override
+        protected void onSuccess(S result) {
+            // never executed, the thread is unparked directly
+        }
+
+        @Override
+        protected void onFailure(Throwable failure) {
+            // never executed, the thread is unparked directly
+        }
+    }
 }
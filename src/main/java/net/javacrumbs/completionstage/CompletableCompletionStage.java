@@ -15,7 +15,13 @@
  */
 package net.javacrumbs.completionstage;
 
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Completion stage you can complete. On  top of standard {@link java.util.concurrent.CompletionStage} methods
@@ -42,6 +48,36 @@ public interface CompletableCompletionStage<T> extends CompletionStage<T> {
      */
     public boolean completeExceptionally(Throwable ex);
 
+    /**
+     * Completes this CompletionStage with a {@link CancellationException} if it has not been already completed.
+     * Dependent stages are completed with a {@link CompletionException} caused by the CancellationException,
+     * functions which would only pass the failure on are not executed at all.
+     *
+     * @return {@code true} if this invocation caused this CompletionStage
+     * to transition to a completed state, else {@code false}
+     */
+    public default boolean cancel() {
+        return completeExceptionally(new CancellationException());
+    }
+
+    /**
+     * Returns {@code true} if completed in any fashion: normally, exceptionally, or via cancellation.
+     *
+     * @return {@code true} if completed
+     */
+    public default boolean isDone() {
+        return toCompletableFuture().isDone();
+    }
+
+    /**
+     * Returns {@code true} if this CompletionStage was cancelled before it completed normally.
+     *
+     * @return {@code true} if this CompletionStage was cancelled
+     */
+    public default boolean isCancelled() {
+        return toCompletableFuture().isCancelled();
+    }
+
     /**
      * Sets this CompletionStage as success with provided value
      * if it hasn't been already completed. Same as {@link #complete(Object) complete(T)}, the only difference
@@ -70,4 +106,80 @@ public interface CompletableCompletionStage<T> extends CompletionStage<T> {
             completeExceptionally(throwable);
         }
     }
+
+    /**
+     * Waits if necessary for this CompletionStage to complete and returns the result.
+     * Behaves like {@link java.util.concurrent.CompletableFuture#join()}.
+     *
+     * @return the result value
+     * @throws CancellationException if the computation was cancelled
+     * @throws CompletionException if this stage completed exceptionally
+     */
+    public default T join() {
+        return toCompletableFuture().join();
+    }
+
+    /**
+     * Waits if necessary for this CompletionStage to complete and returns the result.
+     * Behaves like {@link java.util.concurrent.CompletableFuture#get()}.
+     *
+     * @return the result value
+     * @throws CancellationException if the computation was cancelled
+     * @throws ExecutionException if this stage completed exceptionally
+     * @throws InterruptedException if the current thread was interrupted while waiting
+     */
+    public default T get() throws InterruptedException, ExecutionException {
+        return toCompletableFuture().get();
+    }
+
+    /**
+     * Waits if necessary for at most the given time for this CompletionStage to complete and returns the result.
+     * Behaves like {@link java.util.concurrent.CompletableFuture#get(long, TimeUnit)}.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit the time unit of the timeout argument
+     * @return the result value
+     * @throws CancellationException if the computation was cancelled
+     * @throws ExecutionException if this stage completed exceptionally
+     * @throws InterruptedException if the current thread was interrupted while waiting
+     * @throws TimeoutException if the wait timed out
+     */
+    public default T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        return toCompletableFuture().get(timeout, unit);
+    }
+
+    /**
+     * Completes this CompletionStage exceptionally with a {@link TimeoutException} if not otherwise
+     * completed before the given timeout. By default the timeout is scheduled on a timer shared by all such stages,
+     * its thread completes the stage, and is cancelled once the stage completes.
+     *
+     * @param timeout how long to wait before completing exceptionally with a TimeoutException
+     * @param unit the time unit of the timeout argument
+     * @return this CompletionStage
+     */
+    public default CompletionStage<T> orTimeout(long timeout, TimeUnit unit) {
+        Objects.requireNonNull(unit, "unit must not be null");
+        HashedWheelTimer.Timeout scheduled = HashedWheelTimer.sharedTimer()
+                .schedule(() -> completeExceptionally(new TimeoutException()), timeout, unit);
+        whenComplete((result, failure) -> scheduled.cancel());
+        return this;
+    }
+
+    /**
+     * Completes this CompletionStage with the given value if not otherwise completed before the given timeout.
+     * By default the timeout is scheduled on a timer shared by all such stages, its thread completes the stage,
+     * and is cancelled once the stage completes.
+     *
+     * @param value the value to use upon timeout
+     * @param timeout how long to wait before completing normally with the given value
+     * @param unit the time unit of the timeout argument
+     * @return this CompletionStage
+     */
+    public default CompletionStage<T> completeOnTimeout(T value, long timeout, TimeUnit unit) {
+        Objects.requireNonNull(unit, "unit must not be null");
+        HashedWheelTimer.Timeout scheduled = HashedWheelTimer.sharedTimer()
+                .schedule(() -> complete(value), timeout, unit);
+        whenComplete((result, failure) -> scheduled.cancel());
+        return this;
+    }
 }
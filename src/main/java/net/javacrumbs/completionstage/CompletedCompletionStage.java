@@ -0,0 +1,260 @@
+/**
+ * Copyright 2009-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.completionstage;
+
+import net.javacrumbs.completionstage.spi.CompletableCompletionStageFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Immutable {@link CompletionStage} with a result known in advance. Has no callback registry, methods without Async
+ * suffix are evaluated at once against the known result. Callbacks of async methods and methods combining more
+ * stages are dispatched right away, the next stage is the only stage created.
+ */
+final class CompletedCompletionStage<T> extends CompletionStageAdapter<T> {
+    private final T result;
+    private final Throwable failure;
+    private final CompletableCompletionStageFactory completionStageFactory;
+
+    private CompletedCompletionStage(T result, Throwable failure, Executor defaultExecutor, Executor sameThreadExecutor,
+                                     CompletableCompletionStageFactory completionStageFactory) {
+        super(defaultExecutor, sameThreadExecutor);
+        this.result = result;
+        this.failure = failure;
+        this.completionStageFactory = completionStageFactory;
+    }
+
+    static <T> CompletedCompletionStage<T> success(T result, Executor defaultExecutor, Executor sameThreadExecutor,
+                                                   CompletableCompletionStageFactory completionStageFactory) {
+        return new CompletedCompletionStage<>(result, null, defaultExecutor, sameThreadExecutor, completionStageFactory);
+    }
+
+    static <T> CompletedCompletionStage<T> failure(Throwable failure, Executor defaultExecutor, Executor sameThreadExecutor,
+                                                   CompletableCompletionStageFactory completionStageFactory) {
+        return new CompletedCompletionStage<>(null, failure, defaultExecutor, sameThreadExecutor, completionStageFactory);
+    }
+
+    @Override
+    public <U> CompletionStage<U> thenApplyAsync(Function<? super T, ? extends U> fn, Executor executor) {
+        if (!isSameThread(executor)) {
+            CompletableCompletionStage<U> nextStage = newCompletableCompletionStage();
+            addCallback(new SimpleCompletionStage.ApplyCallback<>(fn, nextStage, executor));
+            return nextStage;
+        }
+        if (isFailed()) {
+            return propagateFailure();
+        }
+        try {
+            return newSuccess(fn.apply(result));
+        } catch (Throwable e) {
+            return newFailure(e);
+        }
+    }
+
+    @Override
+    public CompletionStage<Void> thenAcceptAsync(Consumer<? super T> action, Executor executor) {
+        return thenApplyAsync(result -> {
+            action.accept(result);
+            return null;
+        }, executor);
+    }
+
+    @Override
+    public CompletionStage<Void> thenRunAsync(Runnable action, Executor executor) {
+        return thenApplyAsync(result -> {
+            action.run();
+            return null;
+        }, executor);
+    }
+
+    @Override
+    public <U, V> CompletionStage<V> thenCombineAsync(CompletionStage<? extends U> other, BiFunction<? super T, ? super U, ? extends V> fn, Executor executor) {
+        CompletableCompletionStage<V> nextStage = newCompletableCompletionStage();
+        SimpleCompletionStage.CombineCallback<T, U, V> combineCallback = new SimpleCompletionStage.CombineCallback<>(fn, nextStage, executor);
+        addCallback(combineCallback);
+        SimpleCompletionStage.registerCallback(other, new SimpleCompletionStage.CombineOtherCallback<>(combineCallback, getSameThreadExecutor()));
+        return nextStage;
+    }
+
+    @Override
+    public <U> CompletionStage<Void> thenAcceptBothAsync(CompletionStage<? extends U> other, BiConsumer<? super T, ? super U> action, Executor executor) {
+        return thenCombineAsync(other, (t, u) -> {
+            action.accept(t, u);
+            return null;
+        }, executor);
+    }
+
+    @Override
+    public CompletionStage<Void> runAfterBothAsync(CompletionStage<?> other, Runnable action, Executor executor) {
+        return thenCombineAsync(other, (t, u) -> {
+            action.run();
+            return null;
+        }, executor);
+    }
+
+    @Override
+    public <U> CompletionStage<U> applyToEitherAsync(CompletionStage<? extends T> other, Function<? super T, U> fn, Executor executor) {
+        return doApplyToEitherAsync(this, other, fn, executor);
+    }
+
+    @Override
+    public CompletionStage<Void> acceptEitherAsync(CompletionStage<? extends T> other, Consumer<? super T> action, Executor executor) {
+        return doApplyToEitherAsync(this, other, result -> {
+            action.accept(result);
+            return null;
+        }, executor);
+    }
+
+    @Override
+    public CompletionStage<Void> runAfterEitherAsync(CompletionStage<?> other, Runnable action, Executor executor) {
+        return doApplyToEitherAsync(this, other, result -> {
+            action.run();
+            return null;
+        }, executor);
+    }
+
+    /**
+     * Reconciles generics of {@link #runAfterEitherAsync} the same way as {@link SimpleCompletionStage} does.
+     */
+    private <R, U> CompletionStage<U> doApplyToEitherAsync(
+            CompletionStage<? extends R> first,
+            CompletionStage<? extends R> second,
+            Function<? super R, U> fn,
+            Executor executor) {
+        CompletableCompletionStage<U> nextStage = newCompletableCompletionStage();
+        SimpleCompletionStage.EitherCallback<R, U> eitherCallback = new SimpleCompletionStage.EitherCallback<>(fn, nextStage, executor);
+        // registered first, the known result of this stage always wins
+        SimpleCompletionStage.registerCallback(first, eitherCallback);
+        SimpleCompletionStage.registerCallback(second, new SimpleCompletionStage.EitherOtherCallback<>(eitherCallback, getSameThreadExecutor()));
+        return nextStage;
+    }
+
+    @Override
+    public <U> CompletionStage<U> thenComposeAsync(Function<? super T, ? extends CompletionStage<U>> fn, Executor executor) {
+        CompletableCompletionStage<U> nextStage = newCompletableCompletionStage();
+        addCallback(new SimpleCompletionStage.ComposeCallback<>(fn, nextStage, executor, getSameThreadExecutor()));
+        return nextStage;
+    }
+
+    @Override
+    public CompletionStage<T> exceptionally(Function<Throwable, ? extends T> fn) {
+        if (!isFailed()) {
+            return this;
+        }
+        try {
+            return newSuccess(fn.apply(failure));
+        } catch (Throwable e) {
+            return newFailure(e);
+        }
+    }
+
+    @Override
+    public CompletionStage<T> whenCompleteAsync(BiConsumer<? super T, ? super Throwable> action, Executor executor) {
+        if (!isSameThread(executor)) {
+            CompletableCompletionStage<T> nextStage = newCompletableCompletionStage();
+            addCallback(new SimpleCompletionStage.WhenCompleteCallback<>(action, nextStage, executor));
+            return nextStage;
+        }
+        try {
+            action.accept(result, failure);
+        } catch (Throwable e) {
+            return newFailure(e);
+        }
+        return isFailed() ? propagateFailure() : this;
+    }
+
+    @Override
+    public <U> CompletionStage<U> handleAsync(BiFunction<? super T, Throwable, ? extends U> fn, Executor executor) {
+        if (!isSameThread(executor)) {
+            CompletableCompletionStage<U> nextStage = newCompletableCompletionStage();
+            addCallback(new SimpleCompletionStage.HandleCallback<>(fn, nextStage, executor));
+            return nextStage;
+        }
+        try {
+            return newSuccess(fn.apply(result, failure));
+        } catch (Throwable e) {
+            return newFailure(e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<T> toCompletableFuture() {
+        if (isFailed()) {
+            CompletableFuture<T> completableFuture = new CompletableFuture<>();
+            completableFuture.completeExceptionally(failure);
+            return completableFuture;
+        } else {
+            return CompletableFuture.completedFuture(result);
+        }
+    }
+
+    /**
+     * Passes the result to the callback right away, there is nothing to register to.
+     */
+    void addCallback(CallbackRegistry.Callback<? super T> callback) {
+        // dispatched by the registering thread, async callbacks must not be elided into it
+        HopElidingExecutor suspended = HopElidingExecutor.suspend();
+        try {
+            if (isFailed()) {
+                callback.callFailureCallback(failure);
+            } else {
+                callback.callSuccessCallback(result);
+            }
+        } finally {
+            HopElidingExecutor.resume(suspended);
+        }
+    }
+
+    private boolean isFailed() {
+        return failure != null;
+    }
+
+    private boolean isSameThread(Executor executor) {
+        return executor == getSameThreadExecutor();
+    }
+
+    /**
+     * Failure is passed to the next stage wrapped to a {@link CompletionException}.
+     */
+    @SuppressWarnings("unchecked")
+    private <U> CompletionStage<U> propagateFailure() {
+        if (failure instanceof CompletionException) {
+            // already wrapped, the next stage would be the same
+            return (CompletionStage<U>) this;
+        } else {
+            return newFailure(failure);
+        }
+    }
+
+    private <U> CompletionStage<U> newSuccess(U value) {
+        return success(value, getDefaultExecutor(), getSameThreadExecutor(), completionStageFactory);
+    }
+
+    private <U> CompletionStage<U> newFailure(Throwable e) {
+        return failure(SimpleCompletionStage.wrapException(e), getDefaultExecutor(), getSameThreadExecutor(), completionStageFactory);
+    }
+
+    private <R> CompletableCompletionStage<R> newCompletableCompletionStage() {
+        return completionStageFactory.createCompletionStage();
+    }
+}
@@ -43,13 +43,23 @@ abstract class CompletionStageAdapter<T> implements CompletionStage<T> {
      */
     private final Executor defaultExecutor;
 
+    /**
+     * Executor to be used for methods without Async suffix.
+     */
+    private final Executor sameThreadExecutor;
+
     CompletionStageAdapter(Executor defaultExecutor) {
+        this(defaultExecutor, SAME_THREAD_EXECUTOR);
+    }
+
+    CompletionStageAdapter(Executor defaultExecutor, Executor sameThreadExecutor) {
         this.defaultExecutor = defaultExecutor;
+        this.sameThreadExecutor = sameThreadExecutor;
     }
 
     @Override
     public <U> CompletionStage<U> thenApply(Function<? super T, ? extends U> fn) {
-        return thenApplyAsync(fn, SAME_THREAD_EXECUTOR);
+        return thenApplyAsync(fn, sameThreadExecutor);
     }
 
     @Override
@@ -59,7 +69,7 @@ abstract class CompletionStageAdapter<T> implements CompletionStage<T> {
 
     @Override
     public CompletionStage<Void> thenAccept(Consumer<? super T> action) {
-        return thenAcceptAsync(action, SAME_THREAD_EXECUTOR);
+        return thenAcceptAsync(action, sameThreadExecutor);
     }
 
     @Override
@@ -69,7 +79,7 @@ abstract class CompletionStageAdapter<T> implements CompletionStage<T> {
 
     @Override
     public CompletionStage<Void> thenRun(Runnable action) {
-        return thenRunAsync(action, SAME_THREAD_EXECUTOR);
+        return thenRunAsync(action, sameThreadExecutor);
     }
 
     @Override
@@ -79,7 +89,7 @@ abstract class CompletionStageAdapter<T> implements CompletionStage<T> {
 
     @Override
     public <U, V> CompletionStage<V> thenCombine(CompletionStage<? extends U> other, BiFunction<? super T, ? super U, ? extends V> fn) {
-        return thenCombineAsync(other, fn, SAME_THREAD_EXECUTOR);
+        return thenCombineAsync(other, fn, sameThreadExecutor);
     }
 
     @Override
@@ -89,7 +99,7 @@ abstract class CompletionStageAdapter<T> implements CompletionStage<T> {
 
     @Override
     public <U> CompletionStage<Void> thenAcceptBoth(CompletionStage<? extends U> other, BiConsumer<? super T, ? super U> action) {
-        return thenAcceptBothAsync(other, action, SAME_THREAD_EXECUTOR);
+        return thenAcceptBothAsync(other, action, sameThreadExecutor);
     }
 
     @Override
@@ -99,7 +109,7 @@ abstract class CompletionStageAdapter<T> implements CompletionStage<T> {
 
     @Override
     public CompletionStage<Void> runAfterBoth(CompletionStage<?> other, Runnable action) {
-        return runAfterBothAsync(other, action, SAME_THREAD_EXECUTOR);
+        return runAfterBothAsync(other, action, sameThreadExecutor);
     }
 
     @Override
@@ -109,7 +119,7 @@ abstract class CompletionStageAdapter<T> implements CompletionStage<T> {
 
     @Override
     public <U> CompletionStage<U> applyToEither(CompletionStage<? extends T> other, Function<? super T, U> fn) {
-        return applyToEitherAsync(other, fn, SAME_THREAD_EXECUTOR);
+        return applyToEitherAsync(other, fn, sameThreadExecutor);
     }
 
     @Override
@@ -119,7 +129,7 @@ abstract class CompletionStageAdapter<T> implements CompletionStage<T> {
 
     @Override
     public CompletionStage<Void> acceptEither(CompletionStage<? extends T> other, Consumer<? super T> action) {
-        return acceptEitherAsync(other, action, SAME_THREAD_EXECUTOR);
+        return acceptEitherAsync(other, action, sameThreadExecutor);
     }
 
     @Override
@@ -129,7 +139,7 @@ abstract class CompletionStageAdapter<T> implements CompletionStage<T> {
 
     @Override
     public CompletionStage<Void> runAfterEither(CompletionStage<?> other, Runnable action) {
-        return runAfterEitherAsync(other, action, SAME_THREAD_EXECUTOR);
+        return runAfterEitherAsync(other, action, sameThreadExecutor);
     }
 
     @Override
@@ -139,7 +149,7 @@ abstract class CompletionStageAdapter<T> implements CompletionStage<T> {
 
     @Override
     public <U> CompletionStage<U> thenCompose(Function<? super T, ? extends CompletionStage<U>> fn) {
-        return thenComposeAsync(fn, SAME_THREAD_EXECUTOR);
+        return thenComposeAsync(fn, sameThreadExecutor);
     }
 
     @Override
@@ -149,7 +159,7 @@ abstract class CompletionStageAdapter<T> implements CompletionStage<T> {
 
     @Override
     public CompletionStage<T> whenComplete(BiConsumer<? super T, ? super Throwable> action) {
-        return whenCompleteAsync(action, SAME_THREAD_EXECUTOR);
+        return whenCompleteAsync(action, sameThreadExecutor);
     }
 
     @Override
@@ -159,7 +169,7 @@ abstract class CompletionStageAdapter<T> implements CompletionStage<T> {
 
     @Override
     public <U> CompletionStage<U> handle(BiFunction<? super T, Throwable, ? extends U> fn) {
-        return handleAsync(fn, SAME_THREAD_EXECUTOR);
+        return handleAsync(fn, sameThreadExecutor);
     }
 
     @Override
@@ -170,4 +180,8 @@ abstract class CompletionStageAdapter<T> implements CompletionStage<T> {
     protected final  Executor getDefaultExecutor() {
         return defaultExecutor;
     }
+
+    protected final Executor getSameThreadExecutor() {
+        return sameThreadExecutor;
+    }
 }
@@ -16,47 +16,173 @@
 package net.javacrumbs.completionstage;
 
 import net.javacrumbs.completionstage.spi.CompletableCompletionStageFactory;
+import net.javacrumbs.completionstage.spi.CompletionStageMetricsListener;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 /**
  * Factory for {@link java.util.concurrent.CompletionStage} implementation.
  */
 public class CompletionStageFactory implements CompletableCompletionStageFactory {
     private final Executor defaultAsyncExecutor;
+    private final Executor sameThreadExecutor;
+    /**
+     * Created by the first {@link #getTimer()}, most factories never use timeouts.
+     */
+    private volatile HashedWheelTimer timer;
+    private final CompletionStageMetricsListener metricsListener;
+    /**
+     * True if a subclass overrides {@link #createCompletionStage()}, the factory methods then return stages created by it.
+     */
+    private final boolean customStages;
+
+    // frequently used values share completed stages
+    private final CompletionStage<Object> nullStage;
+    private final CompletionStage<Boolean> trueStage;
+    private final CompletionStage<Boolean> falseStage;
+    private final CompletionStage<Optional<Object>> emptyStage;
 
     /**
      * Creates factory.
      * @param defaultAsyncExecutor executor to be used for async methods without executor parameter
      */
     public CompletionStageFactory(Executor defaultAsyncExecutor) {
+        this(defaultAsyncExecutor, false);
+    }
+
+    /**
+     * Creates factory.
+     * @param defaultAsyncExecutor executor to be used for async methods without executor parameter
+     * @param trampolined if true, callbacks of methods without Async suffix are not nested, they are queued
+     *                    and executed one after another by the thread that completed the first stage. Stack depth
+     *                    then does not grow with the length of the chain of stages.
+     */
+    public CompletionStageFactory(Executor defaultAsyncExecutor, boolean trampolined) {
+        this(defaultAsyncExecutor, trampolined, null);
+    }
+
+    /**
+     * Creates factory.
+     * @param defaultAsyncExecutor executor to be used for async methods without executor parameter
+     * @param trampolined if true, callbacks of methods without Async suffix are not nested, see
+     *                    {@link #CompletionStageFactory(Executor, boolean)}
+     * @param metricsListener listener notified about creation and completion of the stages, e.g.
+     *                        {@link CompletionStageMetrics}. Null disables the metrics.
+     */
+    public CompletionStageFactory(Executor defaultAsyncExecutor, boolean trampolined, CompletionStageMetricsListener metricsListener) {
         this.defaultAsyncExecutor = defaultAsyncExecutor;
+        this.metricsListener = metricsListener;
+        this.sameThreadExecutor = trampolined ? TrampolineExecutor.INSTANCE : CompletionStageAdapter.SAME_THREAD_EXECUTOR;
+        this.customStages = overridesCreateCompletionStage(getClass());
+        this.nullStage = newCompletedStage(null);
+        this.trueStage = newCompletedStage(Boolean.TRUE);
+        this.falseStage = newCompletedStage(Boolean.FALSE);
+        this.emptyStage = newCompletedStage(Optional.empty());
+    }
+
+    /**
+     * Creates factory which runs async methods without executor parameter on virtual threads, every task gets
+     * its own virtual thread. Suitable for blocking network and database calls. All the factories created by this
+     * method share one executor.
+     *
+     * @return the new factory
+     * @throws UnsupportedOperationException if the runtime does not support virtual threads, they require Java 21
+     */
+    public static CompletionStageFactory virtualThreads() {
+        return new CompletionStageFactory(VirtualThreads.executor());
     }
 
     /**
-     * Creates completion stage.
+     * Creates completion stage. If a subclass overrides this method, the factory methods like
+     * {@link #completedStage(Object)} return stages created by it as well.
      * @param <T> type of the CompletionStage
      * @return CompletionStage
      */
     public <T> CompletableCompletionStage<T> createCompletionStage() {
-        return new SimpleCompletionStage<>(defaultAsyncExecutor, this);
+        return instrument(new SimpleCompletionStage<>(defaultAsyncExecutor, sameThreadExecutor, this));
+    }
+
+    /**
+     * Creates int completion stage, the value is not boxed.
+     * @return IntCompletableCompletionStage
+     */
+    public final IntCompletableCompletionStage createIntCompletionStage() {
+        return newIntCompletionStage();
+    }
+
+    final SimpleIntCompletionStage newIntCompletionStage() {
+        return instrument(new SimpleIntCompletionStage(defaultAsyncExecutor, sameThreadExecutor, this));
+    }
+
+    /**
+     * Creates long completion stage, the value is not boxed.
+     * @return LongCompletableCompletionStage
+     */
+    public final LongCompletableCompletionStage createLongCompletionStage() {
+        return newLongCompletionStage();
+    }
+
+    final SimpleLongCompletionStage newLongCompletionStage() {
+        return instrument(new SimpleLongCompletionStage(defaultAsyncExecutor, sameThreadExecutor, this));
     }
 
     /**
-     * Returns a new CompletionStage that is already completed with
-     * the given value.
+     * Returns a CompletionStage that is already completed with
+     * the given value. The stage is immutable, stages for null, Boolean and
+     * empty Optional values are shared. If {@link #createCompletionStage()} is overridden,
+     * the stage is created by it and completed instead.
      *
      * @param value the value
      * @param <T> the type of the value
      * @return the completed CompletionStage
      */
+    @SuppressWarnings("unchecked")
     public final <T> CompletionStage<T> completedStage(T value) {
-        CompletableCompletionStage<T> result = createCompletionStage();
-        result.complete(value);
-        return result;
+        if (customStages) {
+            CompletableCompletionStage<T> result = createCompletionStage();
+            result.complete(value);
+            return result;
+        } else if (value == null) {
+            return (CompletionStage<T>) nullStage;
+        } else if (value instanceof Boolean) {
+            return (CompletionStage<T>) ((Boolean) value ? trueStage : falseStage);
+        } else if (value instanceof Optional && !((Optional<?>) value).isPresent()) {
+            return (CompletionStage<T>) emptyStage;
+        } else {
+            return newCompletedStage(value);
+        }
+    }
+
+    /**
+     * Returns a CompletionStage that is already completed
+     * exceptionally with the given exception. The stage is immutable. If {@link #createCompletionStage()}
+     * is overridden, the stage is created by it and completed instead.
+     *
+     * @param ex the exception
+     * @param <T> the type of the value
+     * @return the exceptionally completed CompletionStage
+     */
+    public final <T> CompletionStage<T> failedStage(Throwable ex) {
+        Objects.requireNonNull(ex, "ex must not be null");
+        if (customStages) {
+            CompletableCompletionStage<T> result = createCompletionStage();
+            result.completeExceptionally(ex);
+            return result;
+        }
+        return CompletedCompletionStage.failure(ex, defaultAsyncExecutor, sameThreadExecutor, this);
     }
 
     /**
@@ -87,7 +213,48 @@ public class CompletionStageFactory implements CompletableCompletionStageFactory
      */
     public final <U> CompletionStage<U> supplyAsync(Supplier<U> supplier, Executor executor) {
         Objects.requireNonNull(supplier, "supplier must not be null");
-        return completedStage(null).thenApplyAsync((ignored) -> supplier.get(), executor);
+        AsyncTaskStage<U> stage = instrument(AsyncTaskStage.supply(supplier, defaultAsyncExecutor, sameThreadExecutor, this));
+        executor.execute(stage);
+        return adopt(stage);
+    }
+
+    /**
+     * Returns a new CompletionStage that is asynchronously completed
+     * by a task running in the defaultAsyncExecutor with
+     * the value obtained by calling the given Supplier. Unlike {@link #supplyAsync(Supplier)},
+     * the task is not submitted until the result is needed, see {@link #lazySupplyAsync(Supplier, Executor)}.
+     *
+     * @param supplier a function returning the value to be used
+     * to complete the returned CompletionStage
+     * @param <U> the function's return type
+     * @return the new CompletionStage
+     */
+    public final <U> CompletionStage<U> lazySupplyAsync(Supplier<U> supplier) {
+        return lazySupplyAsync(supplier, defaultAsyncExecutor);
+    }
+
+    /**
+     * Returns a new CompletionStage that is asynchronously completed
+     * by a task running in the given executor with the value obtained
+     * by calling the given Supplier. The task is submitted when the result is needed
+     * for the first time - a dependent stage is created, {@code join}, {@code get} or {@code toCompletableFuture}
+     * is called. The supplier is called at most once, even if many threads ask for the result at the same time.
+     * If the stage is completed or cancelled before anyone asks, the supplier is not called at all.
+     * Subsequent completion stages will use defaultAsyncExecutor as their default executor.
+     * <p>
+     * The returned stage is never created by an overridden {@link #createCompletionStage()}, such a stage
+     * could not tell when its result is needed. Stages depending on it are created by the overridden method.
+     *
+     * @param supplier a function returning the value to be used
+     * to complete the returned CompletionStage
+     * @param executor the executor to use for asynchronous execution
+     * @param <U> the function's return type
+     * @return the new CompletionStage
+     */
+    public final <U> CompletionStage<U> lazySupplyAsync(Supplier<U> supplier, Executor executor) {
+        Objects.requireNonNull(supplier, "supplier must not be null");
+        Objects.requireNonNull(executor, "executor must not be null");
+        return instrument(AsyncTaskStage.lazySupply(supplier, executor, defaultAsyncExecutor, sameThreadExecutor, this));
     }
 
     /**
@@ -116,10 +283,195 @@ public class CompletionStageFactory implements CompletableCompletionStageFactory
      */
     public final CompletionStage<Void> runAsync(Runnable runnable, Executor executor) {
         Objects.requireNonNull(runnable, "runnable must not be null");
-        return completedStage(null).thenRunAsync(runnable, executor);
+        AsyncTaskStage<Void> stage = instrument(AsyncTaskStage.run(runnable, defaultAsyncExecutor, sameThreadExecutor, this));
+        executor.execute(stage);
+        return adopt(stage);
+    }
+
+    /**
+     * Returns a new CompletionStage that is completed when all of the given
+     * stages complete. The result is the list of their results in the iteration order
+     * of the collection. If any of the stages completes exceptionally, the returned stage
+     * completes exceptionally right away with a CompletionException holding the exception as its cause,
+     * it does not wait for the rest of the stages. If the collection is empty, the returned stage
+     * is completed with an empty list.
+     *
+     * @param stages the CompletionStages
+     * @param <T> the type of the values
+     * @return the new CompletionStage
+     */
+    public final <T> CompletionStage<List<T>> allOf(Collection<? extends CompletionStage<? extends T>> stages) {
+        Objects.requireNonNull(stages, "stages must not be null");
+        if (stages.isEmpty()) {
+            return completedStage(Collections.emptyList());
+        }
+        return adopt(instrument(AllOfStage.allOf(stages, defaultAsyncExecutor, sameThreadExecutor, this)));
+    }
+
+    /**
+     * Returns a new CompletionStage that is completed when any of the given
+     * stages complete, with the same result. If the stage completes exceptionally, the returned
+     * stage completes exceptionally with a CompletionException holding the exception as its cause.
+     * If the collection is empty, the returned stage is never completed.
+     *
+     * @param stages the CompletionStages
+     * @param <T> the type of the values
+     * @return the new CompletionStage
+     */
+    public final <T> CompletionStage<T> anyOf(Collection<? extends CompletionStage<? extends T>> stages) {
+        Objects.requireNonNull(stages, "stages must not be null");
+        return adopt(instrument(AnyOfStage.anyOf(stages, defaultAsyncExecutor, sameThreadExecutor, this)));
+    }
+
+    /**
+     * Applies the function to all the items of the source, at most maxConcurrency stages returned by the function
+     * are pending at once. Returns a new CompletionStage completed with the list of the results in the iteration
+     * order of the source. If any of the stages completes exceptionally, the returned stage completes exceptionally
+     * right away and no more items are read. The list grows with the source, use
+     * {@link #mapAsync(Iterable, Function, int, boolean, Consumer)} to keep memory bounded.
+     *
+     * @param source the items
+     * @param fn function starting the asynchronous operation for an item
+     * @param maxConcurrency maximal number of pending stages
+     * @param <T> the type of the items
+     * @param <R> the type of the results
+     * @return the new CompletionStage
+     */
+    public final <T, R> CompletionStage<List<R>> mapAsync(Iterable<? extends T> source, Function<? super T, ? extends CompletionStage<? extends R>> fn,
+                                                         int maxConcurrency) {
+        List<R> results = new ArrayList<>();
+        return mapAsync(source, fn, maxConcurrency, true, results::add).thenApply(ignored -> results);
+    }
+
+    /**
+     * Applies the function to all the items of the source, at most maxConcurrency stages returned by the function
+     * are pending at once. The source is read lazily, next item is read only when a slot is free. Results are passed
+     * to the consumer one at a time, never concurrently. Memory is bounded by maxConcurrency, not by the size
+     * of the source.
+     * <p>
+     * Returns a new CompletionStage completed with null when all the results are passed to the consumer.
+     * If the function or the consumer throws an exception or any of the stages completes exceptionally, the returned
+     * stage completes exceptionally right away with a CompletionException holding the exception as its cause,
+     * no more items are read and no more results are passed. Cancelling the returned stage stops the processing
+     * the same way.
+     *
+     * @param source the items
+     * @param fn function starting the asynchronous operation for an item
+     * @param maxConcurrency maximal number of pending stages, in ordered mode including the completed ones waiting
+     *                       for the stages of previous items
+     * @param ordered if true, the results are passed in the iteration order of the source, otherwise as the stages
+     *                complete
+     * @param consumer consumer of the results
+     * @param <T> the type of the items
+     * @param <R> the type of the results
+     * @return the new CompletionStage
+     */
+    public final <T, R> CompletionStage<Void> mapAsync(Iterable<? extends T> source, Function<? super T, ? extends CompletionStage<? extends R>> fn,
+                                                      int maxConcurrency, boolean ordered, Consumer<? super R> consumer) {
+        Objects.requireNonNull(source, "source must not be null");
+        return mapAsync(source.iterator(), fn, maxConcurrency, ordered, consumer);
+    }
+
+    /**
+     * Applies the function to all the items of the stream, see {@link #mapAsync(Iterable, Function, int, boolean, Consumer)}.
+     *
+     * @param source the items
+     * @param fn function starting the asynchronous operation for an item
+     * @param maxConcurrency maximal number of pending stages
+     * @param ordered if true, the results are passed in the order of the stream, otherwise as the stages complete
+     * @param consumer consumer of the results
+     * @param <T> the type of the items
+     * @param <R> the type of the results
+     * @return the new CompletionStage
+     */
+    public final <T, R> CompletionStage<Void> mapAsync(Stream<? extends T> source, Function<? super T, ? extends CompletionStage<? extends R>> fn,
+                                                      int maxConcurrency, boolean ordered, Consumer<? super R> consumer) {
+        Objects.requireNonNull(source, "source must not be null");
+        return mapAsync(source.iterator(), fn, maxConcurrency, ordered, consumer);
+    }
+
+    private <T, R> CompletionStage<Void> mapAsync(Iterator<? extends T> source, Function<? super T, ? extends CompletionStage<? extends R>> fn,
+                                                  int maxConcurrency, boolean ordered, Consumer<? super R> consumer) {
+        Objects.requireNonNull(fn, "fn must not be null");
+        Objects.requireNonNull(consumer, "consumer must not be null");
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("maxConcurrency must be positive");
+        }
+        MapAsyncStage<T, R> stage = instrument(MapAsyncStage.mapAsync(source, fn, maxConcurrency, ordered, consumer,
+                defaultAsyncExecutor, sameThreadExecutor, this));
+        stage.start();
+        return adopt(stage);
+    }
+
+    /**
+     * Returns a new CompletionStage that is completed with null after the given delay.
+     * The stage is completed by a task running in the defaultAsyncExecutor. All the stages
+     * created by this factory share one timer, the delay is precise to 10 ms.
+     *
+     * @param delay how long to wait before completing the stage
+     * @param unit the time unit of the delay argument
+     * @return the new CompletionStage
+     */
+    public final CompletionStage<Void> delayedStage(long delay, TimeUnit unit) {
+        Objects.requireNonNull(unit, "unit must not be null");
+        DelayedStage stage = instrument(new DelayedStage(defaultAsyncExecutor, sameThreadExecutor, this));
+        getTimer().schedule(stage, delay, unit);
+        return adopt(stage);
+    }
+
+    private <S extends SimpleCompletionStage<?>> S instrument(S stage) {
+        return metricsListener == null ? stage : MetricsCallback.register(stage, metricsListener);
+    }
+
+    private <S extends PrimitiveCompletionStage> S instrument(S stage) {
+        return metricsListener == null ? stage : MetricsCallback.register(stage, metricsListener);
+    }
+
+    /**
+     * Returns the stage itself unless {@link #createCompletionStage()} is overridden. Otherwise returns a stage
+     * created by it, completed with the result of the given stage. Cancelling the returned stage cancels
+     * the given one.
+     */
+    private <T> CompletionStage<T> adopt(SimpleCompletionStage<T> stage) {
+        if (!customStages) {
+            return stage;
+        }
+        CompletableCompletionStage<T> result = createCompletionStage();
+        stage.addCallback(new SimpleCompletionStage.PropagateCallback<>(result, sameThreadExecutor));
+        SimpleCompletionStage.registerCallback(result, new SimpleCompletionStage.CancelCallback<>(stage));
+        return result;
+    }
+
+    private <T> CompletionStage<T> newCompletedStage(T value) {
+        return CompletedCompletionStage.success(value, defaultAsyncExecutor, sameThreadExecutor, this);
+    }
+
+    private static boolean overridesCreateCompletionStage(Class<?> factoryClass) {
+        try {
+            return factoryClass.getMethod("createCompletionStage").getDeclaringClass() != CompletionStageFactory.class;
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
     }
 
     protected final Executor getDefaultAsyncExecutor() {
         return defaultAsyncExecutor;
     }
+
+    /**
+     * Timer used by {@link #delayedStage(long, TimeUnit)} and timeouts of the stages created by this factory.
+     */
+    final HashedWheelTimer getTimer() {
+        HashedWheelTimer result = timer;
+        if (result == null) {
+            synchronized (this) {
+                result = timer;
+                if (result == null) {
+                    result = new HashedWheelTimer(defaultAsyncExecutor);
+                    timer = result;
+                }
+            }
+        }
+        return result;
+    }
 }
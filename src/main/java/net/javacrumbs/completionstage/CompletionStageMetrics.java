@@ -0,0 +1,149 @@
+/**
+ * Copyright 2009-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.completionstage;
+
+import net.javacrumbs.completionstage.spi.CompletionStageMetricsListener;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics listener counting stages in striped counters, so that threads completing stages do not contend.
+ * Can be registered as a JMX MBean.
+ * <p>
+ * Usage
+ * <pre>
+ *     CompletionStageMetrics metrics = new CompletionStageMetrics();
+ *     metrics.registerMBean("orders");
+ *     CompletionStageFactory factory = new CompletionStageFactory(executor, false, metrics);
+ * </pre>
+ */
+public class CompletionStageMetrics implements CompletionStageMetricsListener, CompletionStageMetricsMBean {
+    static final String DOMAIN = "net.javacrumbs.completionstage";
+
+    private final LongAdder created = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder dependents = new LongAdder();
+    private final LongAdder completionNanos = new LongAdder();
+    private final LongAccumulator maxCompletionNanos = new LongAccumulator(Math::max, 0L);
+
+    @Override
+    public void stageCreated() {
+        created.increment();
+    }
+
+    @Override
+    public void stageCompleted(boolean failed, int dependents, long durationNanos) {
+        if (failed) {
+            this.failed.increment();
+        } else {
+            completed.increment();
+        }
+        this.dependents.add(dependents);
+        completionNanos.add(durationNanos);
+        maxCompletionNanos.accumulate(durationNanos);
+    }
+
+    /**
+     * Number of stages created.
+     */
+    @Override
+    public long getCreated() {
+        return created.sum();
+    }
+
+    /**
+     * Number of stages completed successfully.
+     */
+    @Override
+    public long getCompleted() {
+        return completed.sum();
+    }
+
+    /**
+     * Number of stages completed exceptionally, including cancelled ones.
+     */
+    @Override
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    /**
+     * Number of stages created but not completed yet. The counters are not read atomically, the number is
+     * approximate while stages are being completed.
+     */
+    @Override
+    public long getPending() {
+        // read the completions first so that the result does not go below zero
+        long done = completed.sum() + failed.sum();
+        return Math.max(0L, created.sum() - done);
+    }
+
+    /**
+     * Average number of dependents registered before a stage has been completed.
+     */
+    @Override
+    public double getAverageDependents() {
+        long count = completed.sum() + failed.sum();
+        return count == 0 ? 0.0 : (double) dependents.sum() / count;
+    }
+
+    /**
+     * Average time from creation to completion of a stage.
+     */
+    @Override
+    public double getAverageCompletionTimeMicros() {
+        long count = completed.sum() + failed.sum();
+        return count == 0 ? 0.0 : (double) completionNanos.sum() / count / 1_000;
+    }
+
+    /**
+     * The longest time from creation to completion of a stage.
+     */
+    @Override
+    public long getMaxCompletionTimeMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(maxCompletionNanos.get());
+    }
+
+    /**
+     * Registers the metrics in the platform MBean server as
+     * {@code net.javacrumbs.completionstage:type=CompletionStageMetrics,name=<name>}.
+     *
+     * @param name name distinguishing the factories
+     * @return name of the registered MBean, use it to unregister the MBean
+     * @throws IllegalStateException if the MBean can not be registered, e.g. the name is already taken
+     */
+    public ObjectName registerMBean(String name) {
+        try {
+            ObjectName objectName = new ObjectName(DOMAIN + ":type=CompletionStageMetrics,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            return objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException("Can not register metrics " + name, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CompletionStageMetrics{created=" + getCreated() + ", completed=" + getCompleted()
+            + ", failed=" + getFailed() + ", pending=" + getPending() + "}";
+    }
+}
@@ -0,0 +1,35 @@
+/**
+ * Copyright 2009-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.completionstage;
+
+import net.javacrumbs.completionstage.spi.CompletableCompletionStageFactory;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Stage completed with null by the timer. The stage is the timer task itself.
+ */
+final class DelayedStage extends SimpleCompletionStage<Void> implements HashedWheelTimer.Task {
+
+    DelayedStage(Executor defaultExecutor, Executor sameThreadExecutor, CompletableCompletionStageFactory completionStageFactory) {
+        super(defaultExecutor, sameThreadExecutor, completionStageFactory);
+    }
+
+    @Override
+    public void expire() {
+        complete(null);
+    }
+}
@@ -0,0 +1,358 @@
+/**
+ * Copyright 2009-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.completionstage;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Timer with O(1) schedule and cancel. Timeouts are kept in a wheel of buckets, the worker thread advances
+ * one bucket per tick and expires the timeouts whose deadline has passed. Timeouts are precise
+ * to one tick.
+ * <p>
+ * Only the worker thread touches the buckets. Other threads push new and cancelled timeouts to lock free stacks
+ * which the worker drains on every tick. The worker is a daemon thread started on the first schedule, it stops
+ * after one idle rotation of the wheel and is started again when needed. Expired tasks are executed by the given executor so a slow task does not stall the timer.
+ */
+final class HashedWheelTimer {
+    static final long DEFAULT_TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    static final int DEFAULT_WHEEL_SIZE = 512;
+
+    private static final int NOT_STARTED = 0;
+    private static final int STARTED = 1;
+
+    private static final AtomicIntegerFieldUpdater<HashedWheelTimer> WORKER_STATE =
+            AtomicIntegerFieldUpdater.newUpdater(HashedWheelTimer.class, "workerState");
+
+    private final Executor executor;
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final long startTime = System.nanoTime();
+
+    // timeouts waiting to be put to the wheel, linked through Timeout.nextPending
+    private final AtomicReference<Timeout> pending = new AtomicReference<>();
+    // cancelled timeouts waiting to be removed from the wheel, linked through Timeout.nextCancelled
+    private final AtomicReference<Timeout> cancelled = new AtomicReference<>();
+
+    private volatile int workerState = NOT_STARTED;
+
+    // number of timeouts in the wheel, owned by the worker thread
+    private long size;
+
+    /**
+     * Creates the timer.
+     *
+     * @param executor executor expired tasks are executed by
+     * @param tickNanos duration of one tick
+     * @param wheelSize number of buckets, rounded up to a power of two
+     */
+    HashedWheelTimer(Executor executor, long tickNanos, int wheelSize) {
+        if (tickNanos <= 0) {
+            throw new IllegalArgumentException("tickNanos must be positive");
+        }
+        if (wheelSize <= 0 || wheelSize > 1 << 30) {
+            throw new IllegalArgumentException("wheelSize must be between 1 and 2^30");
+        }
+        this.executor = executor;
+        this.tickNanos = tickNanos;
+        int size = Integer.highestOneBit(wheelSize - 1) << 1;
+        this.wheel = new Bucket[Math.max(size, 1)];
+        for (int i = 0; i < wheel.length; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = wheel.length - 1;
+    }
+
+    HashedWheelTimer(Executor executor) {
+        this(executor, DEFAULT_TICK_NANOS, DEFAULT_WHEEL_SIZE);
+    }
+
+    /**
+     * Timer for stages which were not created by {@link CompletionStageFactory}. Tasks are executed
+     * by the timer thread.
+     */
+    static HashedWheelTimer sharedTimer() {
+        return SharedTimerHolder.INSTANCE;
+    }
+
+    /**
+     * Schedules the task to be executed after the delay.
+     */
+    Timeout schedule(Task task, long delay, TimeUnit unit) {
+        long deadline = System.nanoTime() - startTime + Math.max(unit.toNanos(delay), 0L);
+        if (deadline < 0) {
+            // overflow, practically never expires
+            deadline = Long.MAX_VALUE;
+        }
+        Timeout timeout = new Timeout(this, task, deadline);
+        push(pending, timeout, true);
+        // after the push, a worker which is just stopping would miss the timeout otherwise
+        startWorkerIfNeeded();
+        return timeout;
+    }
+
+    private void startWorkerIfNeeded() {
+        if (workerState == NOT_STARTED && WORKER_STATE.compareAndSet(this, NOT_STARTED, STARTED)) {
+            Thread thread = new Thread(this::runWorker, "completion-stage-timer");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private static void push(AtomicReference<Timeout> stack, Timeout timeout, boolean toPending) {
+        Timeout head;
+        do {
+            head = stack.get();
+            if (toPending) {
+                timeout.nextPending = head;
+            } else {
+                timeout.nextCancelled = head;
+            }
+        } while (!stack.compareAndSet(head, timeout));
+    }
+
+    private void runWorker() {
+        long tick = (System.nanoTime() - startTime) / tickNanos;
+        int idleTicks = 0;
+        while (true) {
+            waitForTick(tick);
+            removeCancelled();
+            transferPending(tick);
+            expire(wheel[(int) (tick & mask)]);
+            tick++;
+            if (size > 0) {
+                idleTicks = 0;
+            } else if (++idleTicks >= wheel.length && stopWorker()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Stops the worker unless a timeout has been scheduled in the meantime.
+     *
+     * @return true if the worker should exit
+     */
+    private boolean stopWorker() {
+        workerState = NOT_STARTED;
+        // timeout pushed before the state has been switched did not start a new worker, continue with this one
+        return pending.get() == null || !WORKER_STATE.compareAndSet(this, NOT_STARTED, STARTED);
+    }
+
+    private void waitForTick(long tick) {
+        long deadline = tickNanos * (tick + 1);
+        long sleep;
+        while ((sleep = deadline - (System.nanoTime() - startTime)) > 0) {
+            LockSupport.parkNanos(this, sleep);
+        }
+    }
+
+    private void removeCancelled() {
+        Timeout timeout = cancelled.getAndSet(null);
+        while (timeout != null) {
+            Timeout next = timeout.nextCancelled;
+            timeout.nextCancelled = null;
+            if (timeout.bucket != null) {
+                remove(timeout);
+            }
+            timeout = next;
+        }
+    }
+
+    private void transferPending(long tick) {
+        Timeout timeout = pending.getAndSet(null);
+        while (timeout != null) {
+            Timeout next = timeout.nextPending;
+            timeout.nextPending = null;
+            if (timeout.state == Timeout.INIT) {
+                long expirationTick = timeout.deadline / tickNanos;
+                timeout.remainingRounds = (expirationTick - tick) / wheel.length;
+                // deadline already passed, expire in the current tick
+                long bucketTick = Math.max(expirationTick, tick);
+                wheel[(int) (bucketTick & mask)].add(timeout);
+                size++;
+            }
+            timeout = next;
+        }
+    }
+
+    private void expire(Bucket bucket) {
+        Timeout timeout = bucket.head;
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.state != Timeout.INIT) {
+                remove(timeout);
+            } else if (timeout.remainingRounds <= 0) {
+                remove(timeout);
+                if (timeout.expire()) {
+                    execute(timeout);
+                }
+            } else {
+                timeout.remainingRounds--;
+            }
+            timeout = next;
+        }
+    }
+
+    /**
+     * Executes the expired timeout by the executor. If the executor rejects it, the timeout is run by the timer
+     * thread, the stage would never complete otherwise.
+     */
+    private void execute(Timeout timeout) {
+        try {
+            executor.execute(timeout);
+            return;
+        } catch (Throwable e) {
+            // rejected, run it here
+        }
+        try {
+            timeout.run();
+        } catch (Throwable e) {
+            // the timer has to survive failing tasks
+        }
+    }
+
+    private void remove(Timeout timeout) {
+        timeout.bucket.remove(timeout);
+        size--;
+    }
+
+    /**
+     * Task executed when the timeout expires.
+     */
+    interface Task {
+        void expire();
+    }
+
+    /**
+     * Handle of a scheduled task.
+     */
+    static final class Timeout implements Runnable {
+        private static final int INIT = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private static final AtomicIntegerFieldUpdater<Timeout> STATE =
+                AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+        private final HashedWheelTimer timer;
+        private final long deadline;
+
+        // cleared on cancel so the task can be garbage collected before the timeout leaves the wheel
+        private volatile Task task;
+        private volatile int state = INIT;
+
+        // owned by the worker thread
+        private long remainingRounds;
+        private Bucket bucket;
+        private Timeout prev;
+        private Timeout next;
+
+        // links of the lock free stacks, written before the timeout is pushed
+        private Timeout nextPending;
+        private Timeout nextCancelled;
+
+        private Timeout(HashedWheelTimer timer, Task task, long deadline) {
+            this.timer = timer;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Cancels the timeout. The task is released at once, the timeout is removed from the wheel
+         * on the next tick.
+         *
+         * @return false if the timeout has already expired or has been cancelled
+         */
+        boolean cancel() {
+            if (!STATE.compareAndSet(this, INIT, CANCELLED)) {
+                return false;
+            }
+            task = null;
+            push(timer.cancelled, this, false);
+            return true;
+        }
+
+        boolean isCancelled() {
+            return state == CANCELLED;
+        }
+
+        boolean isExpired() {
+            return state == EXPIRED;
+        }
+
+        private boolean expire() {
+            return STATE.compareAndSet(this, INIT, EXPIRED);
+        }
+
+        @Override
+        public void run() {
+            Task expiredTask = task;
+            task = null;
+            // null if the task has already been run by an executor which has thrown afterwards
+            if (expiredTask != null) {
+                expiredTask.expire();
+            }
+        }
+    }
+
+    private static final class SharedTimerHolder {
+        private static final HashedWheelTimer INSTANCE = new HashedWheelTimer(CompletionStageAdapter.SAME_THREAD_EXECUTOR);
+    }
+
+    /**
+     * Doubly linked list of timeouts, accessed only by the worker thread.
+     */
+    private static final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        private void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        private void remove(Timeout timeout) {
+            Timeout next = timeout.next;
+            if (timeout.prev != null) {
+                timeout.prev.next = next;
+            }
+            if (next != null) {
+                next.prev = timeout.prev;
+            }
+            if (timeout == head) {
+                head = next;
+            }
+            if (timeout == tail) {
+                tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+}
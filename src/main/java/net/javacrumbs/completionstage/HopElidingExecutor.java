@@ -0,0 +1,169 @@
+/**
+ * Copyright 2009-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.completionstage;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Executor marking the threads it runs tasks on. Async dependents of a stage completed by one of its tasks are
+ * executed inline instead of being submitted back to the same pool, which saves a queue handoff and a context switch
+ * per stage. The nesting depth of inline execution is limited, once the limit is reached the dependent is submitted
+ * to the delegate as usual.
+ * <p>
+ * Only dependent stages are elided, and only when they are dispatched by the completion of the stage. Tasks passed to
+ * {@link #execute(Runnable)} directly, e.g. by {@link CompletionStageFactory#supplyAsync}, are always submitted, so
+ * that fan-out from a pool thread stays parallel. Async dependents added to a stage which is already completed are
+ * submitted as well, they never run inside the {@code *Async} call which added them.
+ * <p>
+ * Usage
+ * <pre>
+ *     CompletionStageFactory factory = new CompletionStageFactory(new HopElidingExecutor(threadPool));
+ * </pre>
+ */
+public final class HopElidingExecutor implements Executor {
+    static final int DEFAULT_MAX_DEPTH = 64;
+
+    private static final ThreadLocal<Mark> mark = ThreadLocal.withInitial(Mark::new);
+
+    // set by the first instance, until then the callbacks of completed stages do not touch the thread local
+    private static volatile boolean instantiated;
+
+    private final Executor delegate;
+    private final int maxDepth;
+
+    private final LongAdder hops = new LongAdder();
+    private final LongAdder elidedHops = new LongAdder();
+
+    /**
+     * Creates executor eliding up to 64 nested hops.
+     * @param delegate executor the tasks are submitted to
+     */
+    public HopElidingExecutor(Executor delegate) {
+        this(delegate, DEFAULT_MAX_DEPTH);
+    }
+
+    /**
+     * Creates executor.
+     * @param delegate executor the tasks are submitted to
+     * @param maxDepth maximal number of dependents executed inline one inside another, 0 disables the elision
+     */
+    public HopElidingExecutor(Executor delegate, int maxDepth) {
+        if (maxDepth < 0) {
+            throw new IllegalArgumentException("maxDepth has to be non-negative, was " + maxDepth);
+        }
+        this.delegate = requireNonNull(delegate, "delegate");
+        this.maxDepth = maxDepth;
+        instantiated = true;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        hops.increment();
+        delegate.execute(new MarkingTask(command));
+    }
+
+    /**
+     * Executes a dependent stage. Runs it inline if the current thread is running a task of this executor and
+     * the depth limit has not been reached.
+     */
+    void executeDependent(Runnable command) {
+        Mark current = mark.get();
+        if (current.owner == this && current.depth < maxDepth) {
+            elidedHops.increment();
+            current.depth++;
+            try {
+                command.run();
+            } finally {
+                current.depth--;
+            }
+        } else {
+            execute(command);
+        }
+    }
+
+    /**
+     * Stops eliding on the current thread until {@link #resume(HopElidingExecutor)} is called. Used when a callback is
+     * added to a stage which has already been completed, the callback is dispatched by the thread adding it.
+     *
+     * @return the executor the elision has been suspended for, null if there was none
+     */
+    static HopElidingExecutor suspend() {
+        if (!instantiated) {
+            return null;
+        }
+        Mark current = mark.get();
+        HopElidingExecutor owner = current.owner;
+        current.owner = null;
+        return owner;
+    }
+
+    static void resume(HopElidingExecutor owner) {
+        if (owner != null) {
+            mark.get().owner = owner;
+        }
+    }
+
+    /**
+     * Returns number of tasks submitted to the delegate.
+     */
+    public long getHopCount() {
+        return hops.sum();
+    }
+
+    /**
+     * Returns number of dependents executed inline instead of being submitted to the delegate.
+     */
+    public long getElidedHopCount() {
+        return elidedHops.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "HopElidingExecutor{delegate=" + delegate + ", maxDepth=" + maxDepth + "}";
+    }
+
+    private static final class Mark {
+        private HopElidingExecutor owner;
+        private int depth;
+    }
+
+    private final class MarkingTask implements Runnable {
+        private final Runnable command;
+
+        private MarkingTask(Runnable command) {
+            this.command = command;
+        }
+
+        @Override
+        public void run() {
+            Mark current = mark.get();
+            HopElidingExecutor previousOwner = current.owner;
+            int previousDepth = current.depth;
+            // the delegate may run the task in the submitting thread
+            current.owner = HopElidingExecutor.this;
+            current.depth = 0;
+            try {
+                command.run();
+            } finally {
+                current.owner = previousOwner;
+                current.depth = previousDepth;
+            }
+        }
+    }
+}
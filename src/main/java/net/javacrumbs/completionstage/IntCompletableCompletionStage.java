@@ -0,0 +1,39 @@
+/**
+ * Copyright 2009-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.completionstage;
+
+/**
+ * Int stage you can complete.
+ */
+public interface IntCompletableCompletionStage extends IntCompletionStage {
+    /**
+     * Completes the stage with the given value.
+     *
+     * @param result the result value
+     * @return {@code true} if this invocation caused this stage
+     * to transition to a completed state, else {@code false}
+     */
+    boolean complete(int result);
+
+    /**
+     * Completes the stage exceptionally.
+     *
+     * @param ex the exception
+     * @return {@code true} if this invocation caused this stage
+     * to transition to a completed state, else {@code false}
+     */
+    boolean completeExceptionally(Throwable ex);
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright 2009-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.completionstage;
+
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntConsumer;
+import java.util.function.IntToLongFunction;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Stage of an int computation. The value is not boxed as long as it stays in int and long stages.
+ * Failures are handled the same way as in {@link CompletionStage}, functions are not executed and
+ * the dependent stage is completed exceptionally with a {@link java.util.concurrent.CompletionException}.
+ * Use {@link #boxed()} to get a full featured CompletionStage. Instances are created by
+ * {@link CompletionStageFactory#createIntCompletionStage()}.
+ */
+public interface IntCompletionStage {
+    /**
+     * Returns a new stage that, when this stage completes normally, is executed with this stage's
+     * result as the argument to the supplied function.
+     *
+     * @param fn the function to use to compute the value of the returned stage
+     * @return the new stage
+     */
+    IntCompletionStage thenApply(IntUnaryOperator fn);
+
+    /**
+     * Same as {@link #thenApply(IntUnaryOperator)}, the function is executed using the default executor.
+     *
+     * @param fn the function to use to compute the value of the returned stage
+     * @return the new stage
+     */
+    IntCompletionStage thenApplyAsync(IntUnaryOperator fn);
+
+    /**
+     * Same as {@link #thenApply(IntUnaryOperator)}, the function is executed using the supplied executor.
+     *
+     * @param fn the function to use to compute the value of the returned stage
+     * @param executor the executor to use for asynchronous execution
+     * @return the new stage
+     */
+    IntCompletionStage thenApplyAsync(IntUnaryOperator fn, Executor executor);
+
+    /**
+     * Returns a new long stage that, when this stage completes normally, is executed with this stage's
+     * result as the argument to the supplied function.
+     *
+     * @param fn the function to use to compute the value of the returned stage
+     * @return the new stage
+     */
+    LongCompletionStage thenApplyToLong(IntToLongFunction fn);
+
+    /**
+     * Returns a new stage that, when this and the other given stage both complete normally, is executed
+     * with the two results as arguments to the supplied function. The first failure completes the returned
+     * stage at once.
+     *
+     * @param other the other stage
+     * @param fn the function to use to compute the value of the returned stage
+     * @return the new stage
+     */
+    IntCompletionStage thenCombine(IntCompletionStage other, IntBinaryOperator fn);
+
+    /**
+     * Returns a new stage that, when this stage completes normally, is executed with this stage's
+     * result as the argument to the supplied action.
+     *
+     * @param action the action to perform before completing the returned stage
+     * @return the new stage
+     */
+    CompletionStage<Void> thenAccept(IntConsumer action);
+
+    /**
+     * Returns a new CompletionStage completed with the boxed result of this stage. Every call creates a new stage.
+     *
+     * @return the new CompletionStage
+     */
+    CompletionStage<Integer> boxed();
+
+    /**
+     * Returns true if completed in any fashion: normally, exceptionally, or via cancellation.
+     */
+    boolean isDone();
+
+    /**
+     * Waits if necessary for the result, see {@link CompletableCompletionStage#join()}.
+     *
+     * @return the result value
+     * @throws java.util.concurrent.CancellationException if the computation was cancelled
+     * @throws java.util.concurrent.CompletionException if this stage completed exceptionally
+     */
+    int join();
+}
@@ -0,0 +1,228 @@
+/**
+ * Copyright 2009-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.completionstage;
+
+import net.javacrumbs.completionstage.spi.CompletableCompletionStageFactory;
+
+import java.util.Iterator;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Stage completed once the function has been applied to all the items of the source and all the stages it has
+ * returned are completed. At most maxConcurrency items are processed at once, the source is read only when
+ * a slot is free.
+ * <p>
+ * Completed items push themselves to a stack, a single thread at a time - the one which finds the work-in-progress
+ * counter zero - takes them, passes the results to the consumer and starts new items. Stages completed
+ * synchronously are processed by the same loop, not by recursion. In ordered mode the results are put into
+ * a reorder buffer of maxConcurrency slots first, an item occupies its slot until all the items before it are
+ * passed to the consumer.
+ */
+final class MapAsyncStage<T, R> extends SimpleCompletionStage<Void> {
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<MapAsyncStage> WIP =
+            AtomicIntegerFieldUpdater.newUpdater(MapAsyncStage.class, "wip");
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<MapAsyncStage, ItemCallback> COMPLETED =
+            AtomicReferenceFieldUpdater.newUpdater(MapAsyncStage.class, ItemCallback.class, "completed");
+
+    private final Function<? super T, ? extends CompletionStage<? extends R>> fn;
+    private final Consumer<? super R> consumer;
+    private final int maxConcurrency;
+    private final Executor sameThreadExecutor;
+
+    // accessed only by the thread holding the work-in-progress counter, other threads only compare drainingThread
+    // with themselves
+    private final Iterator<? extends T> source;
+    private final ItemCallback<R>[] reorderBuffer;
+    private boolean exhausted;
+    private long started;
+    private long delivered;
+    private int startedSlot;
+    private int deliveredSlot;
+    private Thread drainingThread;
+
+    private volatile int wip;
+    private volatile ItemCallback<R> completed;
+
+    private MapAsyncStage(Iterator<? extends T> source, Function<? super T, ? extends CompletionStage<? extends R>> fn,
+                          int maxConcurrency, boolean ordered, Consumer<? super R> consumer, Executor defaultExecutor,
+                          Executor sameThreadExecutor, CompletableCompletionStageFactory completionStageFactory) {
+        super(defaultExecutor, sameThreadExecutor, completionStageFactory);
+        this.source = source;
+        this.fn = fn;
+        this.maxConcurrency = maxConcurrency;
+        this.consumer = consumer;
+        this.sameThreadExecutor = sameThreadExecutor;
+        this.reorderBuffer = ordered ? newReorderBuffer(maxConcurrency) : null;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <R> ItemCallback<R>[] newReorderBuffer(int size) {
+        return new ItemCallback[size];
+    }
+
+    static <T, R> MapAsyncStage<T, R> mapAsync(Iterator<? extends T> source, Function<? super T, ? extends CompletionStage<? extends R>> fn,
+                                               int maxConcurrency, boolean ordered, Consumer<? super R> consumer, Executor defaultExecutor,
+                                               Executor sameThreadExecutor, CompletableCompletionStageFactory completionStageFactory) {
+        return new MapAsyncStage<>(source, fn, maxConcurrency, ordered, consumer, defaultExecutor, sameThreadExecutor, completionStageFactory);
+    }
+
+    /**
+     * Starts the first items. To be called once the stage is fully set up.
+     */
+    void start() {
+        drain();
+    }
+
+    private void itemCompleted(ItemCallback<R> callback) {
+        if (drainingThread == Thread.currentThread()) {
+            // completed synchronously when started by the loop, no need to go through the stack
+            accept(callback);
+            return;
+        }
+        ItemCallback<R> head;
+        do {
+            head = completed;
+            callback.next = head;
+        } while (!COMPLETED.compareAndSet(this, head, callback));
+        drain();
+    }
+
+    private void drain() {
+        if (WIP.getAndIncrement(this) != 0) {
+            // the thread in the loop processes the item
+            return;
+        }
+        int missed = 1;
+        do {
+            drainingThread = Thread.currentThread();
+            if (!isDone()) {
+                try {
+                    acceptCompleted();
+                    startItems();
+                } catch (Throwable e) {
+                    completeExceptionally(wrapException(e));
+                }
+            }
+            drainingThread = null;
+            missed = WIP.addAndGet(this, -missed);
+        } while (missed != 0);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void acceptCompleted() {
+        ItemCallback<R> callback = COMPLETED.getAndSet(this, null);
+        while (callback != null) {
+            ItemCallback<R> next = callback.next;
+            callback.next = null;
+            accept(callback);
+            callback = next;
+        }
+    }
+
+    /**
+     * Passes the result of the item to the consumer, in ordered mode together with the results of the following
+     * items which have been waiting for it.
+     */
+    private void accept(ItemCallback<R> callback) {
+        if (isDone()) {
+            return;
+        }
+        if (callback.failure != null) {
+            completeExceptionally(wrapException(callback.failure));
+        } else if (reorderBuffer == null) {
+            deliver(callback);
+        } else if (callback.slot != deliveredSlot) {
+            // waits for the items before it
+            reorderBuffer[callback.slot] = callback;
+        } else {
+            deliver(callback);
+            while (!isDone() && (callback = reorderBuffer[deliveredSlot]) != null) {
+                reorderBuffer[deliveredSlot] = null;
+                deliver(callback);
+            }
+        }
+    }
+
+    private void deliver(ItemCallback<R> callback) {
+        delivered++;
+        deliveredSlot = nextSlot(deliveredSlot);
+        try {
+            consumer.accept(callback.result);
+        } catch (Throwable e) {
+            completeExceptionally(wrapException(e));
+        }
+    }
+
+    private void startItems() {
+        while (!exhausted && started - delivered < maxConcurrency && !isDone()) {
+            if (!source.hasNext()) {
+                exhausted = true;
+                break;
+            }
+            ItemCallback<R> callback = new ItemCallback<>(this, startedSlot, sameThreadExecutor);
+            started++;
+            startedSlot = nextSlot(startedSlot);
+            registerCallback(fn.apply(source.next()), callback);
+        }
+        if (exhausted && started == delivered) {
+            complete(null);
+        }
+    }
+
+    /**
+     * Items occupy the slots of the reorder buffer in a round robin, there are never more than maxConcurrency
+     * of them between the oldest item not passed to the consumer and the newest one.
+     */
+    private int nextSlot(int slot) {
+        return slot + 1 == maxConcurrency ? 0 : slot + 1;
+    }
+
+    private static final class ItemCallback<R> extends CallbackRegistry.Callback<R> {
+        private final MapAsyncStage<?, R> stage;
+        private final int slot;
+
+        // written before the callback is pushed to the stack of completed items
+        private R result;
+        private Throwable failure;
+        private ItemCallback<R> next;
+
+        private ItemCallback(MapAsyncStage<?, R> stage, int slot, Executor executor) {
+            super(executor);
+            this.stage = stage;
+            this.slot = slot;
+        }
+
+        @Override
+        protected void onSuccess(R result) {
+            this.result = result;
+            stage.itemCompleted(this);
+        }
+
+        @Override
+        protected void onFailure(Throwable failure) {
+            this.failure = failure;
+            stage.itemCompleted(this);
+        }
+    }
+}
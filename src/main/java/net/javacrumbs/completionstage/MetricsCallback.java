@@ -0,0 +1,66 @@
+/**
+ * Copyright 2009-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.completionstage;
+
+import net.javacrumbs.completionstage.spi.CompletionStageMetricsListener;
+
+/**
+ * Reports the completion of a stage to the metrics listener. Registered as the first callback of the stage right
+ * after it has been created, so that the rest of the dependents follow it when the stage is completed. Stages
+ * of factories without a listener do not get it, there is no cost when metrics are disabled.
+ */
+final class MetricsCallback extends CallbackRegistry.Callback<Object> {
+    private final CompletionStageMetricsListener listener;
+    private final long createdNanos;
+
+    private MetricsCallback(CompletionStageMetricsListener listener) {
+        super(null);
+        this.listener = listener;
+        this.createdNanos = System.nanoTime();
+    }
+
+    static <S extends SimpleCompletionStage<?>> S register(S stage, CompletionStageMetricsListener listener) {
+        listener.stageCreated();
+        stage.addCallback(new MetricsCallback(listener));
+        return stage;
+    }
+
+    static <S extends PrimitiveCompletionStage> S register(S stage, CompletionStageMetricsListener listener) {
+        listener.stageCreated();
+        stage.addCallback(new MetricsCallback(listener));
+        return stage;
+    }
+
+    @Override
+    void callSuccessCallback(Object result) {
+        listener.stageCompleted(false, countFollowing(), System.nanoTime() - createdNanos);
+    }
+
+    @Override
+    void callFailureCallback(Throwable failure) {
+        listener.stageCompleted(true, countFollowing(), System.nanoTime() - createdNanos);
+    }
+
+    @Override
+    protected void onSuccess(Object result) {
+        // never executed, the listener is notified directly
+    }
+
+    @Override
+    protected void onFailure(Throwable failure) {
+        // never executed, the listener is notified directly
+    }
+}
@@ -0,0 +1,159 @@
+/**
+ * Copyright 2009-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.completionstage;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import static net.javacrumbs.completionstage.SimpleCompletionStage.isCancellation;
+import static net.javacrumbs.completionstage.SimpleCompletionStage.wrapException;
+
+/**
+ * Common part of int and long stages. The value is kept unboxed in the completed state of the registry,
+ * callbacks get null and read the value from the stage they listen on. The stage is its own registry,
+ * there is one object less per stage.
+ */
+abstract class PrimitiveCompletionStage extends CallbackRegistry<Void> {
+    private final Executor defaultExecutor;
+    private final Executor sameThreadExecutor;
+    private final CompletionStageFactory completionStageFactory;
+
+    PrimitiveCompletionStage(Executor defaultExecutor, Executor sameThreadExecutor, CompletionStageFactory completionStageFactory) {
+        this.defaultExecutor = defaultExecutor;
+        this.sameThreadExecutor = sameThreadExecutor;
+        this.completionStageFactory = completionStageFactory;
+    }
+
+    public boolean completeExceptionally(Throwable ex) {
+        return failure(ex);
+    }
+
+    @Override
+    public boolean isDone() {
+        return super.isDone();
+    }
+
+    /**
+     * Blocks until the stage is completed, throws the failure the same way as {@link SimpleCompletionStage#join()}.
+     */
+    final void awaitSuccess() {
+        if (!isDone()) {
+            awaitUninterruptibly();
+        }
+        if (isCompletedExceptionally()) {
+            Throwable failure = getFailure();
+            if (failure instanceof CancellationException) {
+                throw (CancellationException) failure;
+            }
+            throw (CompletionException) wrapException(failure);
+        }
+    }
+
+    final Executor getDefaultExecutor() {
+        return defaultExecutor;
+    }
+
+    final Executor getSameThreadExecutor() {
+        return sameThreadExecutor;
+    }
+
+    final CompletionStageFactory getCompletionStageFactory() {
+        return completionStageFactory;
+    }
+
+    /**
+     * Callback which completes the next stage, mirrors {@code SimpleCompletionStage.NextStageCallback}.
+     */
+    abstract static class NextStageCallback extends CallbackRegistry.Callback<Void> {
+        NextStageCallback(Executor executor) {
+            super(executor);
+        }
+
+        abstract boolean isNextDone();
+
+        abstract void failNext(Throwable failure);
+
+        @Override
+        void callSuccessCallback(Void result) {
+            if (!isNextDone()) {
+                super.callSuccessCallback(result);
+            }
+        }
+
+        @Override
+        void callFailureCallback(Throwable failure) {
+            if (isNextDone()) {
+                return;
+            }
+            if (isCancellation(failure)) {
+                failNext(wrapException(failure));
+            } else {
+                super.callFailureCallback(failure);
+            }
+        }
+
+        @Override
+        protected void onFailure(Throwable failure) {
+            failNext(wrapException(failure));
+        }
+    }
+
+    /**
+     * Callback completing an int or long stage.
+     */
+    abstract static class PrimitiveStageCallback<N extends PrimitiveCompletionStage> extends NextStageCallback {
+        protected final N nextStage;
+
+        PrimitiveStageCallback(N nextStage, Executor executor) {
+            super(executor);
+            this.nextStage = nextStage;
+        }
+
+        @Override
+        final boolean isNextDone() {
+            return nextStage.isDone();
+        }
+
+        @Override
+        final void failNext(Throwable failure) {
+            nextStage.completeExceptionally(failure);
+        }
+    }
+
+    /**
+     * Callback completing a generic stage.
+     */
+    abstract static class ObjectStageCallback<U> extends NextStageCallback {
+        protected final CompletableCompletionStage<U> nextStage;
+
+        ObjectStageCallback(CompletableCompletionStage<U> nextStage, Executor executor) {
+            super(executor);
+            this.nextStage = nextStage;
+        }
+
+        @Override
+        final boolean isNextDone() {
+            // the default isDone of CompletableCompletionStage is too expensive to be called on every completion
+            return nextStage instanceof SimpleCompletionStage && ((SimpleCompletionStage<U>) nextStage).isDone();
+        }
+
+        @Override
+        final void failNext(Throwable failure) {
+            nextStage.completeExceptionally(failure);
+        }
+    }
+}
@@ -17,15 +17,22 @@ package net.javacrumbs.completionstage;
 
 import net.javacrumbs.completionstage.spi.CompletableCompletionStageFactory;
 
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.function.Function;
-import java.util.function.Supplier;
 
 /**
  * Please do not use this class directly, use {@link CompletionStageFactory} to create instances.
@@ -33,9 +40,18 @@ import java.util.function.Supplier;
  */
 public class SimpleCompletionStage<T> extends CompletionStageAdapter<T> implements CompletableCompletionStage<T> {
 
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<SimpleCompletionStage, CompletableFuture> COMPLETABLE_FUTURE =
+            AtomicReferenceFieldUpdater.newUpdater(SimpleCompletionStage.class, CompletableFuture.class, "completableFuture");
+
     private final CallbackRegistry<T> callbackRegistry = new CallbackRegistry<>();
     private final CompletableCompletionStageFactory completionStageFactory;
 
+    /**
+     * Lazily created by {@link #toCompletableFuture()}, all the calls share the same instance.
+     */
+    private volatile CompletableFuture<T> completableFuture;
+
     /**
      * Creates SimpleCompletionStage.
      *
@@ -46,6 +62,19 @@ public class SimpleCompletionStage<T> extends CompletionStageAdapter<T> implemen
         super(defaultExecutor);
         this.completionStageFactory = completionStageFactory;
     }
+
+    /**
+     * Creates SimpleCompletionStage.
+     *
+     * @param defaultExecutor executor to be used for all async method without executor parameter.
+     * @param sameThreadExecutor executor to be used for all methods without Async suffix. Has to execute commands
+     *                           in the calling thread.
+     * @param completionStageFactory factory to create next stages
+     */
+    public SimpleCompletionStage(Executor defaultExecutor, Executor sameThreadExecutor, CompletableCompletionStageFactory completionStageFactory) {
+        super(defaultExecutor, sameThreadExecutor);
+        this.completionStageFactory = completionStageFactory;
+    }
     
     /**
      * Notifies all callbacks about the result.
@@ -67,17 +96,28 @@ public class SimpleCompletionStage<T> extends CompletionStageAdapter<T> implemen
         return callbackRegistry.failure(ex);
     }
 
+    @Override
+    public boolean cancel() {
+        return completeExceptionally(new CancellationException());
+    }
+
+    @Override
+    public boolean isDone() {
+        return callbackRegistry.isDone();
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return callbackRegistry.isCompletedExceptionally() && callbackRegistry.getFailure() instanceof CancellationException;
+    }
+
     @Override
     public <U> CompletionStage<U> thenApplyAsync(
             Function<? super T, ? extends U> fn,
             Executor executor
     ) {
-    	CompletableCompletionStage<U> nextStage = newCompletableCompletionStage();
-        addCallbacks(
-                result -> acceptResult(nextStage, () -> fn.apply(result)),
-                handleFailure(nextStage),
-                executor
-        );
+        CompletableCompletionStage<U> nextStage = newCompletableCompletionStage();
+        addCallback(new ApplyCallback<>(fn, nextStage, executor));
         return nextStage;
     }
 
@@ -96,7 +136,12 @@ public class SimpleCompletionStage<T> extends CompletionStageAdapter<T> implemen
             CompletionStage<? extends U> other,
             BiFunction<? super T, ? super U, ? extends V> fn,
             Executor executor) {
-        return thenCompose(result1 -> other.thenApplyAsync(result2 -> fn.apply(result1, result2), executor));
+        CompletableCompletionStage<V> nextStage = newCompletableCompletionStage();
+        CombineCallback<T, U, V> combineCallback = new CombineCallback<>(fn, nextStage, executor);
+        // listens on both stages at once, fn is executed when both results are known
+        addCallback(combineCallback);
+        registerCallback(other, new CombineOtherCallback<>(combineCallback, getSameThreadExecutor()));
+        return nextStage;
     }
 
     @Override
@@ -142,15 +187,13 @@ public class SimpleCompletionStage<T> extends CompletionStageAdapter<T> implemen
             CompletionStage<? extends R> second,
             Function<? super R, U> fn,
             Executor executor) {
-    	CompletableCompletionStage<R> nextStage = newCompletableCompletionStage();
+        CompletableCompletionStage<U> nextStage = newCompletableCompletionStage();
 
-        // only the first result is accepted by completion stage,
-        // the other one is ignored
-        BiConsumer<R, Throwable> action = completeHandler(nextStage);
-        first.whenComplete(action);
-        second.whenComplete(action);
-
-        return nextStage.thenApplyAsync(fn, executor);
+        // only the first result is accepted, the other one is ignored
+        EitherCallback<R, U> eitherCallback = new EitherCallback<>(fn, nextStage, executor);
+        registerCallback(first, eitherCallback);
+        registerCallback(second, new EitherOtherCallback<>(eitherCallback, getSameThreadExecutor()));
+        return nextStage;
     }
 
     @Override
@@ -165,52 +208,22 @@ public class SimpleCompletionStage<T> extends CompletionStageAdapter<T> implemen
 
     @Override
     public <U> CompletionStage<U> thenComposeAsync(Function<? super T, ? extends CompletionStage<U>> fn, Executor executor) {
-    	CompletableCompletionStage<U> nextStage = newCompletableCompletionStage();
-        addCallbacks(
-                result1 -> {
-                    try {
-                        fn.apply(result1).whenComplete( completeHandler(nextStage) );
-                    } catch (Throwable e) {
-                        handleFailure(nextStage, e);
-                    }
-                },
-                handleFailure(nextStage),
-                executor
-        );
+        CompletableCompletionStage<U> nextStage = newCompletableCompletionStage();
+        addCallback(new ComposeCallback<>(fn, nextStage, executor, getSameThreadExecutor()));
         return nextStage;
     }
 
     @Override
     public CompletionStage<T> exceptionally(Function<Throwable, ? extends T> fn) {
-    	CompletableCompletionStage<T> nextStage = newCompletableCompletionStage();
-        addCallbacks(
-                nextStage::complete,
-                e -> acceptResult(nextStage, () -> fn.apply(e)),
-                SAME_THREAD_EXECUTOR
-        );
+        CompletableCompletionStage<T> nextStage = newCompletableCompletionStage();
+        addCallback(new ExceptionallyCallback<>(fn, nextStage, getSameThreadExecutor()));
         return nextStage;
     }
 
     @Override
     public CompletionStage<T> whenCompleteAsync(BiConsumer<? super T, ? super Throwable> action, Executor executor) {
-    	CompletableCompletionStage<T> nextStage = newCompletableCompletionStage();
-        addCallbacks(
-                result -> acceptResult(
-                		nextStage,
-                        () -> {
-                            action.accept(result, null);
-                            return result;
-                        }
-                ),
-                failure -> {
-                    try {
-                        action.accept(null, failure);
-                        handleFailure(nextStage, failure);
-                    } catch (Throwable e) {
-                        handleFailure(nextStage, e);
-                    }
-                }, executor
-        );
+        CompletableCompletionStage<T> nextStage = newCompletableCompletionStage();
+        addCallback(new WhenCompleteCallback<>(action, nextStage, executor));
         return nextStage;
     }
 
@@ -218,25 +231,138 @@ public class SimpleCompletionStage<T> extends CompletionStageAdapter<T> implemen
     public <U> CompletionStage<U> handleAsync(
             BiFunction<? super T, Throwable, ? extends U> fn,
             Executor executor) {
-    	CompletableCompletionStage<U> nextStage = newCompletableCompletionStage();
-        addCallbacks(
-                result -> acceptResult(nextStage,() -> fn.apply(result, null)),
-                // exceptions are treated as success
-                e -> acceptResult(nextStage, () -> fn.apply(null, e)),
-                executor
-        );
+        CompletableCompletionStage<U> nextStage = newCompletableCompletionStage();
+        addCallback(new HandleCallback<>(fn, nextStage, executor));
         return nextStage;
     }
 
+    /**
+     * Waits for the result without creating a CompletableFuture, the thread is parked until the result is known.
+     */
+    @Override
+    public T join() {
+        if (!callbackRegistry.isDone()) {
+            callbackRegistry.awaitUninterruptibly();
+        }
+        if (callbackRegistry.isCompletedExceptionally()) {
+            Throwable failure = callbackRegistry.getFailure();
+            if (failure instanceof CancellationException) {
+                throw (CancellationException) failure;
+            }
+            if (failure instanceof CompletionException) {
+                throw (CompletionException) failure;
+            }
+            throw new CompletionException(failure);
+        }
+        return callbackRegistry.getResult();
+    }
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+        if (!callbackRegistry.isDone()) {
+            callbackRegistry.await();
+        }
+        return reportGet();
+    }
+
+    @Override
+    public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!callbackRegistry.isDone() && !callbackRegistry.await(unit.toNanos(timeout))) {
+            throw new TimeoutException();
+        }
+        return reportGet();
+    }
+
+    /**
+     * Completes this stage with a TimeoutException unless it is completed before the timeout. The timer entry
+     * is cancelled as soon as the stage completes.
+     */
+    @Override
+    public CompletableCompletionStage<T> orTimeout(long timeout, TimeUnit unit) {
+        scheduleTimeout(new TimeoutCallback<>(this, null, false), timeout, unit);
+        return this;
+    }
+
+    /**
+     * Completes this stage with the value unless it is completed before the timeout. The timer entry
+     * is cancelled as soon as the stage completes.
+     */
+    @Override
+    public CompletableCompletionStage<T> completeOnTimeout(T value, long timeout, TimeUnit unit) {
+        scheduleTimeout(new TimeoutCallback<>(this, value, true), timeout, unit);
+        return this;
+    }
+
+    private void scheduleTimeout(TimeoutCallback<T> callback, long timeout, TimeUnit unit) {
+        Objects.requireNonNull(unit, "unit must not be null");
+        if (!callbackRegistry.isDone()) {
+            callback.timeout = getTimer().schedule(callback, timeout, unit);
+            // cancels the timeout right away if the stage has been completed in the meantime
+            addCallback(callback);
+        }
+    }
+
+    private HashedWheelTimer getTimer() {
+        if (completionStageFactory instanceof CompletionStageFactory) {
+            return ((CompletionStageFactory) completionStageFactory).getTimer();
+        } else {
+            return HashedWheelTimer.sharedTimer();
+        }
+    }
+
+    /**
+     * Same as in CompletableFuture, the cause of CompletionException is unwrapped.
+     */
+    private T reportGet() throws ExecutionException {
+        if (callbackRegistry.isCompletedExceptionally()) {
+            Throwable failure = callbackRegistry.getFailure();
+            if (failure instanceof CancellationException) {
+                throw (CancellationException) failure;
+            }
+            if (failure instanceof CompletionException && failure.getCause() != null) {
+                failure = failure.getCause();
+            }
+            throw new ExecutionException(failure);
+        }
+        return callbackRegistry.getResult();
+    }
+
+    /**
+     * Returns CompletableFuture completed with the result of this stage. The future is created on the first
+     * call and shared by all the subsequent calls.
+     */
     @Override
     public CompletableFuture<T> toCompletableFuture() {
-        CompletableFuture<T> completableFuture = new CompletableFuture<>();
-        addCallbacks(
-                completableFuture::complete,
-                completableFuture::completeExceptionally,
-                SAME_THREAD_EXECUTOR
-        );
-        return completableFuture;
+        CompletableFuture<T> future = completableFuture;
+        if (future == null) {
+            future = createCompletableFuture();
+        }
+        return future;
+    }
+
+    /**
+     * If the result is already known, the future is completed straight away. Otherwise, the future is
+     * installed first and registered as a callback afterwards, so only one callback is ever registered.
+     */
+    @SuppressWarnings("unchecked")
+    private CompletableFuture<T> createCompletableFuture() {
+        boolean done = callbackRegistry.isDone();
+        CompletableFuture<T> future = new CompletableFuture<>();
+        if (done) {
+            if (callbackRegistry.isCompletedExceptionally()) {
+                future.completeExceptionally(callbackRegistry.getFailure());
+            } else {
+                future.complete(callbackRegistry.getResult());
+            }
+        }
+        if (!COMPLETABLE_FUTURE.compareAndSet(this, null, future)) {
+            // created by another thread in the meantime
+            return completableFuture;
+        }
+        if (!done) {
+            addCallback(new CompletableFutureCallback<>(future, getSameThreadExecutor()));
+        }
+        return future;
     }
 
 
@@ -260,43 +386,28 @@ public class SimpleCompletionStage<T> extends CompletionStageAdapter<T> implemen
     }
 
     /**
-     * Accepts result provided by the Supplier. If an exception is thrown by the supplier, completes exceptionally.
-     *
-     * @param supplier generates result
-     * 
+     * Adds callback to the stage. Registers the callback directly if the stage is one of ours
+     * so no intermediate stage is created.
      */
-    
-    private static <T> void acceptResult(CompletableCompletionStage<T> s, Supplier<? extends T> supplier) {
-        try {
-            // exception can be thrown only by supplier. All callbacks are generated by us and they do not throw any exceptions
-            s.complete(supplier.get());
-        } catch (Throwable e) {
-            handleFailure(s, e);
+    static <U> void registerCallback(CompletionStage<? extends U> stage, CallbackRegistry.Callback<U> callback) {
+        if (stage instanceof SimpleCompletionStage) {
+            ((SimpleCompletionStage<? extends U>) stage).addCallback(callback);
+        } else if (stage instanceof CompletedCompletionStage) {
+            ((CompletedCompletionStage<? extends U>) stage).addCallback(callback);
+        } else {
+            stage.whenComplete((result, failure) -> {
+                if (failure == null) {
+                    callback.callSuccessCallback(result);
+                } else {
+                    callback.callFailureCallback(failure);
+                }
+            });
         }
     }
 
-    /**
-     * Handler that can be used in whenComplete method.
-     *
-     * @return BiConsumer that passes values to this CompletionStage.
-     */
-    private static <T> BiConsumer<T, Throwable> completeHandler(CompletableCompletionStage<T> s) {
-        return (result, failure) -> {
-            if (failure == null) {
-                s.complete(result);
-            } else {
-                handleFailure(s, failure);
-            }
-        };
-    }
-
     /**
      * Wraps exception completes exceptionally.
      */
-    private static Consumer<Throwable> handleFailure(CompletableCompletionStage<?> s) {
-    	return (e) -> handleFailure(s, e);
-    }
-    
     private static void handleFailure(CompletableCompletionStage<?> s, Throwable e) {
     	s.completeExceptionally(wrapException(e));
     }
@@ -308,7 +419,7 @@ public class SimpleCompletionStage<T> extends CompletionStageAdapter<T> implemen
      * @param e exception to be wrapped
      * @return CompletionException
      */
-    private static Throwable wrapException(Throwable e) {
+    static Throwable wrapException(Throwable e) {
         if (e instanceof CompletionException) {
             return e;
         } else {
@@ -316,7 +427,479 @@ public class SimpleCompletionStage<T> extends CompletionStageAdapter<T> implemen
         }
     }
 
-    private void addCallbacks(Consumer<? super T> successCallback, Consumer<Throwable> failureCallback, Executor executor) {
-        callbackRegistry.addCallbacks(successCallback, failureCallback, executor);
+    void addCallback(CallbackRegistry.Callback<? super T> callback) {
+        callbackRegistry.addCallback(callback);
+    }
+
+    /**
+     * Returns true if the failure is a cancellation of this or of one of the previous stages.
+     */
+    static boolean isCancellation(Throwable failure) {
+        return failure instanceof CancellationException
+                || (failure instanceof CompletionException && failure.getCause() instanceof CancellationException);
+    }
+
+    private static boolean isDone(CompletableCompletionStage<?> stage) {
+        return stage instanceof SimpleCompletionStage && ((SimpleCompletionStage<?>) stage).isDone();
+    }
+
+    /**
+     * Callback which completes the next stage. Failures are passed to the next stage.
+     * <p>
+     * Nothing is sent to the executor if the next stage has already been completed, typically cancelled.
+     * Cancellation is passed to the next stage directly unless the callback handles failures.
+     */
+    static abstract class NextStageCallback<T, U> extends CallbackRegistry.Callback<T> {
+        protected final CompletableCompletionStage<U> nextStage;
+
+        private NextStageCallback(CompletableCompletionStage<U> nextStage, Executor executor) {
+            super(executor);
+            this.nextStage = nextStage;
+        }
+
+        @Override
+        void callSuccessCallback(T result) {
+            if (!isDone(nextStage)) {
+                super.callSuccessCallback(result);
+            }
+        }
+
+        @Override
+        void callFailureCallback(Throwable failure) {
+            if (isDone(nextStage)) {
+                return;
+            }
+            if (!handlesFailure() && isCancellation(failure)) {
+                handleFailure(nextStage, failure);
+            } else {
+                super.callFailureCallback(failure);
+            }
+        }
+
+        /**
+         * Returns true if the callback does something else than passing the failure to the next stage.
+         */
+        protected boolean handlesFailure() {
+            return false;
+        }
+
+        @Override
+        protected void onFailure(Throwable failure) {
+            handleFailure(nextStage, failure);
+        }
+    }
+
+    static final class ApplyCallback<T, U> extends NextStageCallback<T, U> {
+        private final Function<? super T, ? extends U> fn;
+
+        ApplyCallback(Function<? super T, ? extends U> fn, CompletableCompletionStage<U> nextStage, Executor executor) {
+            super(nextStage, executor);
+            this.fn = fn;
+        }
+
+        @Override
+        protected void onSuccess(T result) {
+            try {
+                nextStage.complete(fn.apply(result));
+            } catch (Throwable e) {
+                handleFailure(nextStage, e);
+            }
+        }
+    }
+
+    static final class ComposeCallback<T, U> extends NextStageCallback<T, U> {
+        private final Function<? super T, ? extends CompletionStage<U>> fn;
+        private final Executor sameThreadExecutor;
+
+        ComposeCallback(Function<? super T, ? extends CompletionStage<U>> fn, CompletableCompletionStage<U> nextStage, Executor executor, Executor sameThreadExecutor) {
+            super(nextStage, executor);
+            this.fn = fn;
+            this.sameThreadExecutor = sameThreadExecutor;
+        }
+
+        @Override
+        protected void onSuccess(T result) {
+            try {
+                CompletionStage<U> stage = fn.apply(result);
+                registerCallback(stage, new PropagateCallback<>(nextStage, sameThreadExecutor));
+                propagateCancellation(stage);
+            } catch (Throwable e) {
+                handleFailure(nextStage, e);
+            }
+        }
+
+        /**
+         * Cancels the stage returned by the function when the next stage gets cancelled,
+         * so that the operation behind it can be aborted. Nothing is registered if the stage has already
+         * been completed, there is nothing to abort and the next stage keeps its single dependent.
+         */
+        private void propagateCancellation(CompletionStage<U> stage) {
+            if (isCancellable(stage)) {
+                // called at once if the next stage is already completed
+                registerCallback(nextStage, new CancelCallback<>(stage));
+            }
+        }
+
+        private static boolean isCancellable(CompletionStage<?> stage) {
+            if (stage instanceof SimpleCompletionStage) {
+                return !((SimpleCompletionStage<?>) stage).isDone();
+            } else if (stage instanceof Future) {
+                return !((Future<?>) stage).isDone();
+            } else {
+                return stage instanceof CompletableCompletionStage;
+            }
+        }
+    }
+
+    private static void cancel(CompletionStage<?> stage) {
+        if (stage instanceof CompletableCompletionStage) {
+            ((CompletableCompletionStage<?>) stage).cancel();
+        } else if (stage instanceof Future) {
+            ((Future<?>) stage).cancel(true);
+        }
+    }
+
+    /**
+     * Cancels the target stage if the stage it listens on is cancelled.
+     * Callback methods are overridden, the executor is never used.
+     */
+    static final class CancelCallback<T> extends CallbackRegistry.Callback<T> {
+        private final CompletionStage<?> target;
+
+        CancelCallback(CompletionStage<?> target) {
+            super(null);
+            this.target = target;
+        }
+
+        @Override
+        void callSuccessCallback(T result) {
+            // nothing to cancel
+        }
+
+        @Override
+        void callFailureCallback(Throwable failure) {
+            if (isCancellation(failure)) {
+                cancel(target);
+            }
+        }
+
+        @Override
+        protected void onSuccess(T result) {
+            // never executed
+        }
+
+        @Override
+        protected void onFailure(Throwable failure) {
+            // never executed
+        }
+    }
+
+    static final class PropagateCallback<T> extends NextStageCallback<T, T> {
+        PropagateCallback(CompletableCompletionStage<T> nextStage, Executor executor) {
+            super(nextStage, executor);
+        }
+
+        @Override
+        protected void onSuccess(T result) {
+            nextStage.complete(result);
+        }
+    }
+
+    private static final class ExceptionallyCallback<T> extends NextStageCallback<T, T> {
+        private final Function<Throwable, ? extends T> fn;
+
+        private ExceptionallyCallback(Function<Throwable, ? extends T> fn, CompletableCompletionStage<T> nextStage, Executor executor) {
+            super(nextStage, executor);
+            this.fn = fn;
+        }
+
+        @Override
+        protected void onSuccess(T result) {
+            nextStage.complete(result);
+        }
+
+        @Override
+        protected boolean handlesFailure() {
+            return true;
+        }
+
+        @Override
+        protected void onFailure(Throwable failure) {
+            try {
+                nextStage.complete(fn.apply(failure));
+            } catch (Throwable e) {
+                handleFailure(nextStage, e);
+            }
+        }
+    }
+
+    static final class WhenCompleteCallback<T> extends NextStageCallback<T, T> {
+        private final BiConsumer<? super T, ? super Throwable> action;
+
+        WhenCompleteCallback(BiConsumer<? super T, ? super Throwable> action, CompletableCompletionStage<T> nextStage, Executor executor) {
+            super(nextStage, executor);
+            this.action = action;
+        }
+
+        @Override
+        protected void onSuccess(T result) {
+            try {
+                action.accept(result, null);
+                nextStage.complete(result);
+            } catch (Throwable e) {
+                handleFailure(nextStage, e);
+            }
+        }
+
+        @Override
+        protected boolean handlesFailure() {
+            return true;
+        }
+
+        @Override
+        protected void onFailure(Throwable failure) {
+            try {
+                action.accept(null, failure);
+                handleFailure(nextStage, failure);
+            } catch (Throwable e) {
+                handleFailure(nextStage, e);
+            }
+        }
+    }
+
+    static final class HandleCallback<T, U> extends NextStageCallback<T, U> {
+        private final BiFunction<? super T, Throwable, ? extends U> fn;
+
+        HandleCallback(BiFunction<? super T, Throwable, ? extends U> fn, CompletableCompletionStage<U> nextStage, Executor executor) {
+            super(nextStage, executor);
+            this.fn = fn;
+        }
+
+        @Override
+        protected void onSuccess(T result) {
+            try {
+                nextStage.complete(fn.apply(result, null));
+            } catch (Throwable e) {
+                handleFailure(nextStage, e);
+            }
+        }
+
+        @Override
+        protected boolean handlesFailure() {
+            return true;
+        }
+
+        @Override
+        protected void onFailure(Throwable failure) {
+            // exceptions are treated as success
+            try {
+                nextStage.complete(fn.apply(null, failure));
+            } catch (Throwable e) {
+                handleFailure(nextStage, e);
+            }
+        }
+    }
+
+    /**
+     * Applies the function once both inputs are known. Listens on this stage itself, the other stage
+     * reports to it through {@link CombineOtherCallback}. The first failure completes the next stage at once.
+     */
+    static final class CombineCallback<T, U, V> extends NextStageCallback<T, V> {
+        @SuppressWarnings("rawtypes")
+        private static final AtomicIntegerFieldUpdater<CombineCallback> PENDING =
+                AtomicIntegerFieldUpdater.newUpdater(CombineCallback.class, "pending");
+
+        private final BiFunction<? super T, ? super U, ? extends V> fn;
+
+        private volatile int pending = 2;
+
+        // written before pending is decremented
+        private T result1;
+        private U result2;
+
+        CombineCallback(BiFunction<? super T, ? super U, ? extends V> fn, CompletableCompletionStage<V> nextStage, Executor executor) {
+            super(nextStage, executor);
+            this.fn = fn;
+        }
+
+        @Override
+        void callSuccessCallback(T result) {
+            result1 = result;
+            inputCompleted();
+        }
+
+        @Override
+        void callFailureCallback(Throwable failure) {
+            handleFailure(nextStage, failure);
+        }
+
+        private void otherCompleted(U result) {
+            result2 = result;
+            inputCompleted();
+        }
+
+        private void inputCompleted() {
+            if (PENDING.decrementAndGet(this) == 0) {
+                // both results are known, fn is executed on the executor
+                super.callSuccessCallback(result1);
+            }
+        }
+
+        @Override
+        protected void onSuccess(T result) {
+            try {
+                nextStage.complete(fn.apply(result, result2));
+            } catch (Throwable e) {
+                handleFailure(nextStage, e);
+            }
+        }
+    }
+
+    static final class CombineOtherCallback<U> extends CallbackRegistry.Callback<U> {
+        private final CombineCallback<?, U, ?> combineCallback;
+
+        CombineOtherCallback(CombineCallback<?, U, ?> combineCallback, Executor executor) {
+            super(executor);
+            this.combineCallback = combineCallback;
+        }
+
+        @Override
+        protected void onSuccess(U result) {
+            combineCallback.otherCompleted(result);
+        }
+
+        @Override
+        protected void onFailure(Throwable failure) {
+            combineCallback.callFailureCallback(failure);
+        }
+    }
+
+    /**
+     * Applies the function to the result of whichever stage completes first. Listens on the first stage itself,
+     * the second stage reports to it through {@link EitherOtherCallback}.
+     */
+    static final class EitherCallback<R, U> extends NextStageCallback<R, U> {
+        @SuppressWarnings("rawtypes")
+        private static final AtomicIntegerFieldUpdater<EitherCallback> DONE =
+                AtomicIntegerFieldUpdater.newUpdater(EitherCallback.class, "done");
+
+        private final Function<? super R, U> fn;
+
+        private volatile int done;
+
+        EitherCallback(Function<? super R, U> fn, CompletableCompletionStage<U> nextStage, Executor executor) {
+            super(nextStage, executor);
+            this.fn = fn;
+        }
+
+        @Override
+        void callSuccessCallback(R result) {
+            if (DONE.compareAndSet(this, 0, 1)) {
+                super.callSuccessCallback(result);
+            }
+        }
+
+        @Override
+        void callFailureCallback(Throwable failure) {
+            if (DONE.compareAndSet(this, 0, 1)) {
+                handleFailure(nextStage, failure);
+            }
+        }
+
+        @Override
+        protected void onSuccess(R result) {
+            try {
+                nextStage.complete(fn.apply(result));
+            } catch (Throwable e) {
+                handleFailure(nextStage, e);
+            }
+        }
+    }
+
+    static final class EitherOtherCallback<R> extends CallbackRegistry.Callback<R> {
+        private final EitherCallback<R, ?> eitherCallback;
+
+        EitherOtherCallback(EitherCallback<R, ?> eitherCallback, Executor executor) {
+            super(executor);
+            this.eitherCallback = eitherCallback;
+        }
+
+        @Override
+        protected void onSuccess(R result) {
+            eitherCallback.callSuccessCallback(result);
+        }
+
+        @Override
+        protected void onFailure(Throwable failure) {
+            eitherCallback.callFailureCallback(failure);
+        }
+    }
+
+    /**
+     * Completes the stage when the timer expires, cancels the timer entry when the stage completes first.
+     * Callback methods are overridden, the executor is never used.
+     */
+    static final class TimeoutCallback<T> extends CallbackRegistry.Callback<T> implements HashedWheelTimer.Task {
+        private final CompletableCompletionStage<T> stage;
+        private final T value;
+        private final boolean completeWithValue;
+
+        // written before the callback is registered
+        private HashedWheelTimer.Timeout timeout;
+
+        private TimeoutCallback(CompletableCompletionStage<T> stage, T value, boolean completeWithValue) {
+            super(null);
+            this.stage = stage;
+            this.value = value;
+            this.completeWithValue = completeWithValue;
+        }
+
+        @Override
+        public void expire() {
+            if (completeWithValue) {
+                stage.complete(value);
+            } else {
+                stage.completeExceptionally(new TimeoutException());
+            }
+        }
+
+        @Override
+        void callSuccessCallback(T result) {
+            timeout.cancel();
+        }
+
+        @Override
+        void callFailureCallback(Throwable failure) {
+            timeout.cancel();
+        }
+
+        @Override
+        protected void onSuccess(T result) {
+            // never executed
+        }
+
+        @Override
+        protected void onFailure(Throwable failure) {
+            // never executed
+        }
+    }
+
+    private static final class CompletableFutureCallback<T> extends CallbackRegistry.Callback<T> {
+        private final CompletableFuture<T> completableFuture;
+
+        private CompletableFutureCallback(CompletableFuture<T> completableFuture, Executor executor) {
+            super(executor);
+            this.completableFuture = completableFuture;
+        }
+
+        @Override
+        protected void onSuccess(T result) {
+            completableFuture.complete(result);
+        }
+
+        @Override
+        protected void onFailure(Throwable failure) {
+            completableFuture.completeExceptionally(failure);
+        }
     }
 }
@@ -0,0 +1,280 @@
+/**
+ * Copyright 2009-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.completionstage;
+
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntConsumer;
+import java.util.function.IntToLongFunction;
+import java.util.function.IntUnaryOperator;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * {@link IntCompletableCompletionStage} implementation, the int is stored in the registry without boxing.
+ */
+final class SimpleIntCompletionStage extends PrimitiveCompletionStage implements IntCompletableCompletionStage {
+
+    SimpleIntCompletionStage(Executor defaultExecutor, Executor sameThreadExecutor, CompletionStageFactory completionStageFactory) {
+        super(defaultExecutor, sameThreadExecutor, completionStageFactory);
+    }
+
+    @Override
+    public boolean complete(int result) {
+        return successInt(result);
+    }
+
+    @Override
+    public IntCompletionStage thenApply(IntUnaryOperator fn) {
+        return thenApplyAsync(fn, getSameThreadExecutor());
+    }
+
+    @Override
+    public IntCompletionStage thenApplyAsync(IntUnaryOperator fn) {
+        return thenApplyAsync(fn, getDefaultExecutor());
+    }
+
+    @Override
+    public IntCompletionStage thenApplyAsync(IntUnaryOperator fn, Executor executor) {
+        requireNonNull(fn, "fn must not be null");
+        SimpleIntCompletionStage nextStage = newIntStage();
+        addCallback(new ApplyCallback(this, fn, nextStage, executor));
+        return nextStage;
+    }
+
+    @Override
+    public LongCompletionStage thenApplyToLong(IntToLongFunction fn) {
+        requireNonNull(fn, "fn must not be null");
+        SimpleLongCompletionStage nextStage = getCompletionStageFactory().newLongCompletionStage();
+        addCallback(new ApplyToLongCallback(this, fn, nextStage, getSameThreadExecutor()));
+        return nextStage;
+    }
+
+    @Override
+    public IntCompletionStage thenCombine(IntCompletionStage other, IntBinaryOperator fn) {
+        requireNonNull(other, "other must not be null");
+        requireNonNull(fn, "fn must not be null");
+        SimpleIntCompletionStage nextStage = newIntStage();
+        CombineCallback combineCallback = new CombineCallback(this, fn, nextStage, getSameThreadExecutor());
+        // listens on both stages at once, fn is executed when both results are known
+        addCallback(combineCallback);
+        if (other instanceof SimpleIntCompletionStage) {
+            SimpleIntCompletionStage otherStage = (SimpleIntCompletionStage) other;
+            otherStage.addCallback(new CombineOtherCallback(otherStage, combineCallback, getSameThreadExecutor()));
+        } else {
+            other.boxed().whenComplete((result, failure) -> {
+                if (failure == null) {
+                    combineCallback.otherCompleted(result);
+                } else {
+                    combineCallback.callFailureCallback(failure);
+                }
+            });
+        }
+        return nextStage;
+    }
+
+    @Override
+    public CompletionStage<Void> thenAccept(IntConsumer action) {
+        requireNonNull(action, "action must not be null");
+        CompletableCompletionStage<Void> nextStage = getCompletionStageFactory().createCompletionStage();
+        addCallback(new AcceptCallback(this, action, nextStage, getSameThreadExecutor()));
+        return nextStage;
+    }
+
+    @Override
+    public CompletionStage<Integer> boxed() {
+        CompletableCompletionStage<Integer> nextStage = getCompletionStageFactory().createCompletionStage();
+        addCallback(new BoxCallback(this, nextStage, getSameThreadExecutor()));
+        return nextStage;
+    }
+
+    @Override
+    public int join() {
+        awaitSuccess();
+        return getIntResult();
+    }
+
+    private SimpleIntCompletionStage newIntStage() {
+        return getCompletionStageFactory().newIntCompletionStage();
+    }
+
+    @Override
+    public String toString() {
+        return "SimpleIntCompletionStage{" + (isDone() ? "done" : "pending") + "}";
+    }
+
+    private static final class ApplyCallback extends PrimitiveStageCallback<SimpleIntCompletionStage> {
+        private final SimpleIntCompletionStage stage;
+        private final IntUnaryOperator fn;
+
+        private ApplyCallback(SimpleIntCompletionStage stage, IntUnaryOperator fn, SimpleIntCompletionStage nextStage, Executor executor) {
+            super(nextStage, executor);
+            this.stage = stage;
+            this.fn = fn;
+        }
+
+        @Override
+        protected void onSuccess(Void ignored) {
+            int result;
+            try {
+                result = fn.applyAsInt(stage.getIntResult());
+            } catch (Throwable e) {
+                failNext(SimpleCompletionStage.wrapException(e));
+                return;
+            }
+            nextStage.complete(result);
+        }
+    }
+
+    private static final class ApplyToLongCallback extends PrimitiveStageCallback<SimpleLongCompletionStage> {
+        private final SimpleIntCompletionStage stage;
+        private final IntToLongFunction fn;
+
+        private ApplyToLongCallback(SimpleIntCompletionStage stage, IntToLongFunction fn, SimpleLongCompletionStage nextStage, Executor executor) {
+            super(nextStage, executor);
+            this.stage = stage;
+            this.fn = fn;
+        }
+
+        @Override
+        protected void onSuccess(Void ignored) {
+            long result;
+            try {
+                result = fn.applyAsLong(stage.getIntResult());
+            } catch (Throwable e) {
+                failNext(SimpleCompletionStage.wrapException(e));
+                return;
+            }
+            nextStage.complete(result);
+        }
+    }
+
+    /**
+     * Applies the function once both inputs are known. Listens on the first stage itself, the other stage
+     * reports to it through {@link CombineOtherCallback}. The first failure completes the next stage at once.
+     */
+    private static final class CombineCallback extends PrimitiveStageCallback<SimpleIntCompletionStage> {
+        private static final AtomicIntegerFieldUpdater<CombineCallback> PENDING =
+                AtomicIntegerFieldUpdater.newUpdater(CombineCallback.class, "pending");
+
+        private final SimpleIntCompletionStage stage;
+        private final IntBinaryOperator fn;
+
+        private volatile int pending = 2;
+
+        // written before pending is decremented
+        private int result2;
+
+        private CombineCallback(SimpleIntCompletionStage stage, IntBinaryOperator fn, SimpleIntCompletionStage nextStage, Executor executor) {
+            super(nextStage, executor);
+            this.stage = stage;
+            this.fn = fn;
+        }
+
+        @Override
+        void callSuccessCallback(Void result) {
+            inputCompleted();
+        }
+
+        private void otherCompleted(int result) {
+            result2 = result;
+            inputCompleted();
+        }
+
+        private void inputCompleted() {
+            if (PENDING.decrementAndGet(this) == 0) {
+                // both results are known, fn is executed on the executor
+                super.callSuccessCallback(null);
+            }
+        }
+
+        @Override
+        void callFailureCallback(Throwable failure) {
+            failNext(SimpleCompletionStage.wrapException(failure));
+        }
+
+        @Override
+        protected void onSuccess(Void ignored) {
+            int result;
+            try {
+                result = fn.applyAsInt(stage.getIntResult(), result2);
+            } catch (Throwable e) {
+                failNext(SimpleCompletionStage.wrapException(e));
+                return;
+            }
+            nextStage.complete(result);
+        }
+    }
+
+    private static final class CombineOtherCallback extends CallbackRegistry.Callback<Void> {
+        private final SimpleIntCompletionStage stage;
+        private final CombineCallback combineCallback;
+
+        private CombineOtherCallback(SimpleIntCompletionStage stage, CombineCallback combineCallback, Executor executor) {
+            super(executor);
+            this.stage = stage;
+            this.combineCallback = combineCallback;
+        }
+
+        @Override
+        protected void onSuccess(Void ignored) {
+            combineCallback.otherCompleted(stage.getIntResult());
+        }
+
+        @Override
+        protected void onFailure(Throwable failure) {
+            combineCallback.callFailureCallback(failure);
+        }
+    }
+
+    private static final class AcceptCallback extends ObjectStageCallback<Void> {
+        private final SimpleIntCompletionStage stage;
+        private final IntConsumer action;
+
+        private AcceptCallback(SimpleIntCompletionStage stage, IntConsumer action, CompletableCompletionStage<Void> nextStage, Executor executor) {
+            super(nextStage, executor);
+            this.stage = stage;
+            this.action = action;
+        }
+
+        @Override
+        protected void onSuccess(Void ignored) {
+            try {
+                action.accept(stage.getIntResult());
+            } catch (Throwable e) {
+                failNext(SimpleCompletionStage.wrapException(e));
+                return;
+            }
+            nextStage.complete(null);
+        }
+    }
+
+    private static final class BoxCallback extends ObjectStageCallback<Integer> {
+        private final SimpleIntCompletionStage stage;
+
+        private BoxCallback(SimpleIntCompletionStage stage, CompletableCompletionStage<Integer> nextStage, Executor executor) {
+            super(nextStage, executor);
+            this.stage = stage;
+        }
+
+        @Override
+        protected void onSuccess(Void ignored) {
+            nextStage.complete(stage.getIntResult());
+        }
+    }
+}
@@ -0,0 +1,248 @@
+/**
+ * Copyright 2009-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.completionstage;
+
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.function.LongBinaryOperator;
+import java.util.function.LongConsumer;
+import java.util.function.LongUnaryOperator;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * {@link LongCompletableCompletionStage} implementation, the long is stored in the registry without boxing.
+ */
+final class SimpleLongCompletionStage extends PrimitiveCompletionStage implements LongCompletableCompletionStage {
+
+    SimpleLongCompletionStage(Executor defaultExecutor, Executor sameThreadExecutor, CompletionStageFactory completionStageFactory) {
+        super(defaultExecutor, sameThreadExecutor, completionStageFactory);
+    }
+
+    @Override
+    public boolean complete(long result) {
+        return successLong(result);
+    }
+
+    @Override
+    public LongCompletionStage thenApply(LongUnaryOperator fn) {
+        return thenApplyAsync(fn, getSameThreadExecutor());
+    }
+
+    @Override
+    public LongCompletionStage thenApplyAsync(LongUnaryOperator fn) {
+        return thenApplyAsync(fn, getDefaultExecutor());
+    }
+
+    @Override
+    public LongCompletionStage thenApplyAsync(LongUnaryOperator fn, Executor executor) {
+        requireNonNull(fn, "fn must not be null");
+        SimpleLongCompletionStage nextStage = newLongStage();
+        addCallback(new ApplyCallback(this, fn, nextStage, executor));
+        return nextStage;
+    }
+
+    @Override
+    public LongCompletionStage thenCombine(LongCompletionStage other, LongBinaryOperator fn) {
+        requireNonNull(other, "other must not be null");
+        requireNonNull(fn, "fn must not be null");
+        SimpleLongCompletionStage nextStage = newLongStage();
+        CombineCallback combineCallback = new CombineCallback(this, fn, nextStage, getSameThreadExecutor());
+        // listens on both stages at once, fn is executed when both results are known
+        addCallback(combineCallback);
+        if (other instanceof SimpleLongCompletionStage) {
+            SimpleLongCompletionStage otherStage = (SimpleLongCompletionStage) other;
+            otherStage.addCallback(new CombineOtherCallback(otherStage, combineCallback, getSameThreadExecutor()));
+        } else {
+            other.boxed().whenComplete((result, failure) -> {
+                if (failure == null) {
+                    combineCallback.otherCompleted(result);
+                } else {
+                    combineCallback.callFailureCallback(failure);
+                }
+            });
+        }
+        return nextStage;
+    }
+
+    @Override
+    public CompletionStage<Void> thenAccept(LongConsumer action) {
+        requireNonNull(action, "action must not be null");
+        CompletableCompletionStage<Void> nextStage = getCompletionStageFactory().createCompletionStage();
+        addCallback(new AcceptCallback(this, action, nextStage, getSameThreadExecutor()));
+        return nextStage;
+    }
+
+    @Override
+    public CompletionStage<Long> boxed() {
+        CompletableCompletionStage<Long> nextStage = getCompletionStageFactory().createCompletionStage();
+        addCallback(new BoxCallback(this, nextStage, getSameThreadExecutor()));
+        return nextStage;
+    }
+
+    @Override
+    public long join() {
+        awaitSuccess();
+        return getLongResult();
+    }
+
+    private SimpleLongCompletionStage newLongStage() {
+        return getCompletionStageFactory().newLongCompletionStage();
+    }
+
+    @Override
+    public String toString() {
+        return "SimpleLongCompletionStage{" + (isDone() ? "done" : "pending") + "}";
+    }
+
+    private static final class ApplyCallback extends PrimitiveStageCallback<SimpleLongCompletionStage> {
+        private final SimpleLongCompletionStage stage;
+        private final LongUnaryOperator fn;
+
+        private ApplyCallback(SimpleLongCompletionStage stage, LongUnaryOperator fn, SimpleLongCompletionStage nextStage, Executor executor) {
+            super(nextStage, executor);
+            this.stage = stage;
+            this.fn = fn;
+        }
+
+        @Override
+        protected void onSuccess(Void ignored) {
+            long result;
+            try {
+                result = fn.applyAsLong(stage.getLongResult());
+            } catch (Throwable e) {
+                failNext(SimpleCompletionStage.wrapException(e));
+                return;
+            }
+            nextStage.complete(result);
+        }
+    }
+
+    /**
+     * Applies the function once both inputs are known. Listens on the first stage itself, the other stage
+     * reports to it through {@link CombineOtherCallback}. The first failure completes the next stage at once.
+     */
+    private static final class CombineCallback extends PrimitiveStageCallback<SimpleLongCompletionStage> {
+        private static final AtomicIntegerFieldUpdater<CombineCallback> PENDING =
+                AtomicIntegerFieldUpdater.newUpdater(CombineCallback.class, "pending");
+
+        private final SimpleLongCompletionStage stage;
+        private final LongBinaryOperator fn;
+
+        private volatile int pending = 2;
+
+        // written before pending is decremented
+        private long result2;
+
+        private CombineCallback(SimpleLongCompletionStage stage, LongBinaryOperator fn, SimpleLongCompletionStage nextStage, Executor executor) {
+            super(nextStage, executor);
+            this.stage = stage;
+            this.fn = fn;
+        }
+
+        @Override
+        void callSuccessCallback(Void result) {
+            inputCompleted();
+        }
+
+        private void otherCompleted(long result) {
+            result2 = result;
+            inputCompleted();
+        }
+
+        private void inputCompleted() {
+            if (PENDING.decrementAndGet(this) == 0) {
+                // both results are known, fn is executed on the executor
+                super.callSuccessCallback(null);
+            }
+        }
+
+        @Override
+        void callFailureCallback(Throwable failure) {
+            failNext(SimpleCompletionStage.wrapException(failure));
+        }
+
+        @Override
+        protected void onSuccess(Void ignored) {
+            long result;
+            try {
+                result = fn.applyAsLong(stage.getLongResult(), result2);
+            } catch (Throwable e) {
+                failNext(SimpleCompletionStage.wrapException(e));
+                return;
+            }
+            nextStage.complete(result);
+        }
+    }
+
+    private static final class CombineOtherCallback extends CallbackRegistry.Callback<Void> {
+        private final SimpleLongCompletionStage stage;
+        private final CombineCallback combineCallback;
+
+        private CombineOtherCallback(SimpleLongCompletionStage stage, CombineCallback combineCallback, Executor executor) {
+            super(executor);
+            this.stage = stage;
+            this.combineCallback = combineCallback;
+        }
+
+        @Override
+        protected void onSuccess(Void ignored) {
+            combineCallback.otherCompleted(stage.getLongResult());
+        }
+
+        @Override
+        protected void onFailure(Throwable failure) {
+            combineCallback.callFailureCallback(failure);
+        }
+    }
+
+    private static final class AcceptCallback extends ObjectStageCallback<Void> {
+        private final SimpleLongCompletionStage stage;
+        private final LongConsumer action;
+
+        private AcceptCallback(SimpleLongCompletionStage stage, LongConsumer action, CompletableCompletionStage<Void> nextStage, Executor executor) {
+            super(nextStage, executor);
+            this.stage = stage;
+            this.action = action;
+        }
+
+        @Override
+        protected void onSuccess(Void ignored) {
+            try {
+                action.accept(stage.getLongResult());
+            } catch (Throwable e) {
+                failNext(SimpleCompletionStage.wrapException(e));
+                return;
+            }
+            nextStage.complete(null);
+        }
+    }
+
+    private static final class BoxCallback extends ObjectStageCallback<Long> {
+        private final SimpleLongCompletionStage stage;
+
+        private BoxCallback(SimpleLongCompletionStage stage, CompletableCompletionStage<Long> nextStage, Executor executor) {
+            super(nextStage, executor);
+            this.stage = stage;
+        }
+
+        @Override
+        protected void onSuccess(Void ignored) {
+            nextStage.complete(stage.getLongResult());
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright 2009-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.completionstage;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+/**
+ * Same thread executor which does not nest. The first command is executed at once, commands submitted while it is running
+ * are queued and executed one after another by the outermost call, so the stack depth stays constant no matter
+ * how long the chain of dependent stages is.
+ * <p>
+ * A command blocked waiting for a stage completed by a queued command would wait forever, blocking waits run
+ * the queued commands by {@link #runQueuedCommand()} before they park.
+ */
+final class TrampolineExecutor implements Executor {
+    static final TrampolineExecutor INSTANCE = new TrampolineExecutor();
+
+    private static final ThreadLocal<Trampoline> trampoline = ThreadLocal.withInitial(Trampoline::new);
+
+    private TrampolineExecutor() {
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        Trampoline current = trampoline.get();
+        if (current.running) {
+            current.queue.add(command);
+        } else {
+            current.run(command);
+        }
+    }
+
+    /**
+     * Runs the next command queued in the current thread. Failures are reported by the outermost call, the same
+     * way as failures of commands run by it.
+     *
+     * @return false if there is no queued command
+     */
+    static boolean runQueuedCommand() {
+        Trampoline current = trampoline.get();
+        Runnable command = current.running ? current.queue.poll() : null;
+        if (command == null) {
+            return false;
+        }
+        current.runCommand(command);
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "TRAMPOLINE_EXECUTOR";
+    }
+
+    private static final class Trampoline {
+        private final Queue<Runnable> queue = new ArrayDeque<>();
+        private boolean running;
+        private Throwable failure;
+
+        private void run(Runnable command) {
+            running = true;
+            Throwable failure;
+            try {
+                Runnable next = command;
+                while (next != null) {
+                    // callbacks queued by a failed command have to be executed as well
+                    runCommand(next);
+                    next = queue.poll();
+                }
+            } finally {
+                running = false;
+                failure = this.failure;
+                this.failure = null;
+            }
+            if (failure != null) {
+                rethrow(failure);
+            }
+        }
+
+        private void runCommand(Runnable command) {
+            try {
+                command.run();
+            } catch (Throwable e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+
+        private static void rethrow(Throwable failure) {
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            } else if (failure instanceof Error) {
+                throw (Error) failure;
+            } else {
+                throw new IllegalStateException(failure);
+            }
+        }
+    }
+}
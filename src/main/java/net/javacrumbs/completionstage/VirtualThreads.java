@@ -0,0 +1,64 @@
+/**
+ * Copyright 2009-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.completionstage;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Access to the virtual-thread-per-task executor of Java 21. The library is compiled for Java 8, so the executor
+ * is looked up reflectively.
+ */
+final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * Returns shared executor which starts a new virtual thread for each task.
+     *
+     * @throws UnsupportedOperationException if the runtime does not support virtual threads
+     */
+    static Executor executor() {
+        Executor executor = ExecutorHolder.EXECUTOR;
+        if (executor == null) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or newer, running on " + System.getProperty("java.version"));
+        }
+        return executor;
+    }
+
+    static boolean isSupported() {
+        return ExecutorHolder.EXECUTOR != null;
+    }
+
+    private static final class ExecutorHolder {
+        private static final Executor EXECUTOR = createExecutor();
+
+        private static Executor createExecutor() {
+            try {
+                Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                return (Executor) method.invoke(null);
+            } catch (NoSuchMethodException | IllegalAccessException e) {
+                return null;
+            } catch (InvocationTargetException e) {
+                // virtual threads are a preview feature on Java 19 and 20
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/**
+ * Copyright 2009-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.completionstage.spi;
+
+import net.javacrumbs.completionstage.CompletionStageFactory;
+
+/**
+ * Listener notified about the lifecycle of stages created by a {@link CompletionStageFactory}. Called
+ * from the threads creating and completing the stages, implementations have to be thread safe and fast.
+ * Completed stages returned by {@code completedStage} and {@code failedStage} are not reported.
+ */
+public interface CompletionStageMetricsListener {
+    /**
+     * Called when a stage is created.
+     */
+    void stageCreated();
+
+    /**
+     * Called when a stage is completed.
+     *
+     * @param failed true if the stage has been completed exceptionally
+     * @param dependents number of dependents registered before the stage has been completed
+     * @param durationNanos time from the creation of the stage to its completion
+     */
+    void stageCompleted(boolean failed, int dependents, long durationNanos);
+}
@@ -0,0 +1,376 @@
+/**
+ * Copyright 2009-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.completionstage;
+
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AsyncCacheTest {
+    private static final RuntimeException EXCEPTION = new RuntimeException("test");
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final CompletionStageFactory factory = new CompletionStageFactory(Runnable::run);
+    private final AtomicLong time = new AtomicLong();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private final Function<Integer, CompletionStage<String>> loader = key -> {
+        loads.incrementAndGet();
+        return factory.completedStage("value" + key);
+    };
+
+    private AsyncCache<Integer, String> cache(Function<Integer, CompletionStage<String>> loader, long maximumSize) {
+        return new AsyncCache<>(factory, loader, maximumSize, 10 * SECOND, time::get);
+    }
+
+    @Test
+    public void shouldLoadValueOnce() {
+        AsyncCache<Integer, String> cache = cache(loader, 10);
+
+        assertEquals("value1", join(cache.get(1)));
+        assertEquals("value1", join(cache.get(1)));
+
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0.5, cache.getHitRate(), 0.0);
+        assertEquals(1, cache.getLoadSuccessCount());
+    }
+
+    @Test
+    public void shouldShareInFlightLoad() {
+        CompletableCompletionStage<String> pending = factory.createCompletionStage();
+        AsyncCache<Integer, String> cache = cache(key -> {
+            loads.incrementAndGet();
+            return pending;
+        }, 10);
+
+        CompletionStage<String> first = cache.get(1);
+        CompletionStage<String> second = cache.get(1);
+        CompletionStage<String> present = cache.getIfPresent(1);
+
+        pending.complete("value");
+
+        assertEquals("value", join(first));
+        assertEquals("value", join(second));
+        assertEquals("value", join(present));
+        assertEquals(1, loads.get());
+        assertEquals(2, cache.getHitCount());
+    }
+
+    @Test
+    public void callerShouldNotAffectOtherCallers() {
+        CompletableCompletionStage<String> pending = factory.createCompletionStage();
+        AsyncCache<Integer, String> cache = cache(key -> {
+            loads.incrementAndGet();
+            return pending;
+        }, 10);
+
+        CompletionStage<String> first = cache.get(1);
+        CompletionStage<String> second = cache.get(1);
+        assertNotSame(first, second);
+        ((CompletableCompletionStage<String>) first).complete("wrong");
+        first.toCompletableFuture().cancel(true);
+
+        pending.complete("value");
+
+        assertEquals("wrong", join(first));
+        assertEquals("value", join(second));
+        assertEquals("value", join(cache.get(1)));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void lostRacesShouldNotLeavePendingStages() throws InterruptedException {
+        CompletionStageMetrics metrics = new CompletionStageMetrics();
+        CompletionStageFactory metricsFactory = new CompletionStageFactory(Runnable::run, false, metrics);
+        int threads = 8;
+        AsyncCache<Integer, String> cache = new AsyncCache<>(metricsFactory, key -> metricsFactory.completedStage("value" + key), 1_000);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (int t = 0; t < threads; t++) {
+                executor.execute(() -> {
+                    for (int key = 0; key < 1_000; key++) {
+                        join(cache.get(key));
+                    }
+                });
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(0, metrics.getPending());
+    }
+
+    @Test
+    public void shouldNotCacheFailedLoad() {
+        AsyncCache<Integer, String> cache = cache(key -> {
+            loads.incrementAndGet();
+            return factory.failedStage(EXCEPTION);
+        }, 10);
+
+        assertFailed(cache.get(1));
+        assertNull(cache.getIfPresent(1));
+        assertFailed(cache.get(1));
+
+        assertEquals(2, loads.get());
+        assertEquals(2, cache.getLoadFailureCount());
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void shouldReloadWhenFailureIsObserved() {
+        CompletableCompletionStage<String> pending = factory.createCompletionStage();
+        AsyncCache<Integer, String> cache = cache(key -> {
+            loads.incrementAndGet();
+            return loads.get() == 1 ? pending : factory.completedStage("value");
+        }, 10);
+
+        List<CompletionStage<String>> retried = new ArrayList<>();
+        cache.get(1).exceptionally(e -> {
+            retried.add(cache.get(1));
+            return null;
+        });
+        pending.completeExceptionally(EXCEPTION);
+
+        assertEquals(2, loads.get());
+        assertEquals("value", join(retried.get(0)));
+    }
+
+    @Test
+    public void shouldNotCacheWhenLoaderThrows() {
+        AsyncCache<Integer, String> cache = cache(key -> {
+            throw EXCEPTION;
+        }, 10);
+
+        assertFailed(cache.get(1));
+        assertEquals(0, cache.getSize());
+        assertEquals(1, cache.getLoadFailureCount());
+    }
+
+    @Test
+    public void shouldExpireAfterWrite() {
+        AsyncCache<Integer, String> cache = cache(loader, 10);
+        cache.get(1);
+
+        time.addAndGet(9 * SECOND);
+        cache.get(1);
+        assertEquals(1, loads.get());
+
+        time.addAndGet(SECOND);
+        cache.get(1);
+        assertEquals(2, loads.get());
+        assertEquals(1, cache.getExpirationCount());
+    }
+
+    @Test
+    public void shouldMeasureExpirationFromLoadCompletion() {
+        CompletableCompletionStage<String> pending = factory.createCompletionStage();
+        AsyncCache<Integer, String> cache = cache(key -> {
+            loads.incrementAndGet();
+            return pending;
+        }, 10);
+        cache.get(1);
+
+        time.addAndGet(20 * SECOND);
+        cache.get(1);
+        pending.complete("value");
+        time.addAndGet(5 * SECOND);
+        cache.get(1);
+
+        assertEquals(1, loads.get());
+        assertEquals(20, TimeUnit.NANOSECONDS.toSeconds((long) (cache.getAverageLoadTimeMicros() * 1_000)));
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsed() {
+        AsyncCache<Integer, String> cache = cache(loader, 3);
+        cache.get(1);
+        cache.get(2);
+        cache.get(3);
+        time.addAndGet(SECOND);
+        cache.get(1);
+        cache.get(3);
+
+        cache.get(4);
+
+        assertEquals(3, cache.getSize());
+        assertEquals(1, cache.getEvictionCount());
+        assertNull(cache.getIfPresent(2));
+        assertNotNull(cache.getIfPresent(1));
+        assertNotNull(cache.getIfPresent(3));
+        assertNotNull(cache.getIfPresent(4));
+    }
+
+    @Test
+    public void shouldPreferExpiredEntriesWhenEvicting() {
+        AsyncCache<Integer, String> cache = cache(loader, 2);
+        cache.get(1);
+        time.addAndGet(5 * SECOND);
+        cache.get(2);
+        time.addAndGet(6 * SECOND);
+        cache.get(2);
+
+        cache.get(3);
+
+        assertEquals(0, cache.getEvictionCount());
+        assertEquals(1, cache.getExpirationCount());
+        assertNull(cache.getIfPresent(1));
+    }
+
+    @Test
+    public void shouldNotEvictPendingLoads() {
+        List<CompletableCompletionStage<String>> pending = new ArrayList<>();
+        AsyncCache<Integer, String> cache = cache(key -> {
+            CompletableCompletionStage<String> stage = factory.createCompletionStage();
+            pending.add(stage);
+            return stage;
+        }, 1);
+
+        cache.get(1);
+        cache.get(2);
+        assertEquals(2, cache.getSize());
+        cache.get(1);
+        assertEquals(2, pending.size());
+
+        pending.forEach(stage -> stage.complete("value"));
+        cache.get(3);
+
+        assertEquals(1, cache.getSize());
+        assertEquals(2, cache.getEvictionCount());
+    }
+
+    @Test
+    public void shouldInvalidate() {
+        AsyncCache<Integer, String> cache = cache(loader, 10);
+        cache.get(1);
+        cache.get(2);
+
+        cache.invalidate(1);
+        assertNull(cache.getIfPresent(1));
+        cache.invalidateAll();
+        assertEquals(0, cache.getSize());
+
+        cache.get(1);
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    public void shouldNotCacheValueLoadedAfterInvalidation() {
+        CompletableCompletionStage<String> pending = factory.createCompletionStage();
+        AsyncCache<Integer, String> cache = cache(key -> {
+            loads.incrementAndGet();
+            return pending;
+        }, 10);
+        CompletionStage<String> stage = cache.get(1);
+
+        cache.invalidate(1);
+        pending.complete("value");
+
+        assertEquals("value", join(stage));
+        assertNotSame(stage, cache.get(1));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void shouldStayBoundedUnderConcurrentLoad() throws InterruptedException {
+        int threads = 8;
+        AsyncCache<Integer, String> cache = cache(loader, 100);
+        AtomicInteger mismatches = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (int t = 0; t < threads; t++) {
+                int seed = t;
+                executor.execute(() -> {
+                    for (int i = 0; i < 10_000; i++) {
+                        int key = (i * 31 + seed) % 1_000;
+                        if (!("value" + key).equals(join(cache.get(key)))) {
+                            mismatches.incrementAndGet();
+                        }
+                    }
+                });
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(0, mismatches.get());
+        assertTrue("size " + cache.getSize(), cache.getSize() <= 100 + threads);
+        assertEquals(threads * 10_000, cache.getHitCount() + cache.getMissCount());
+        assertEquals(cache.getMissCount(), loads.get());
+    }
+
+    @Test
+    public void shouldRegisterMBean() throws Exception {
+        AsyncCache<Integer, String> cache = cache(loader, 10);
+        cache.get(1);
+        cache.get(1);
+
+        ObjectName name = cache.registerMBean("test");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            assertEquals(1L, server.getAttribute(name, "HitCount"));
+            assertEquals(1L, server.getAttribute(name, "Size"));
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectNonPositiveSize() {
+        new AsyncCache<>(factory, loader, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectNonPositiveExpiration() {
+        new AsyncCache<>(factory, loader, 10, 0, TimeUnit.SECONDS);
+    }
+
+    private static String join(CompletionStage<String> stage) {
+        return stage.toCompletableFuture().join();
+    }
+
+    private static void assertFailed(CompletionStage<String> stage) {
+        try {
+            join(stage);
+            fail("Exception expected");
+        } catch (CompletionException e) {
+            assertSame(EXCEPTION, e.getCause());
+        }
+    }
+}
@@ -0,0 +1,257 @@
+/**
+ * Copyright 2009-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.completionstage;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BatchLoaderTest {
+    private static final RuntimeException EXCEPTION = new RuntimeException("test");
+
+    private final CompletionStageFactory factory = new CompletionStageFactory(Runnable::run);
+    private final List<List<Integer>> batches = new CopyOnWriteArrayList<>();
+
+    private final Function<List<Integer>, CompletionStage<Map<Integer, String>>> bulkLoader = keys -> {
+        batches.add(keys);
+        return factory.completedStage(keys.stream().collect(Collectors.toMap(key -> key, key -> "value" + key)));
+    };
+
+    private BatchLoader<Integer, String> loader(Function<List<Integer>, CompletionStage<Map<Integer, String>>> bulkLoader, int maxBatchSize) {
+        return new BatchLoader<>(factory, bulkLoader, maxBatchSize, 1, TimeUnit.HOURS);
+    }
+
+    @Test
+    public void shouldDispatchFullBatch() {
+        BatchLoader<Integer, String> loader = loader(bulkLoader, 3);
+
+        CompletionStage<String> first = loader.load(1);
+        CompletionStage<String> second = loader.load(2);
+        assertTrue(batches.isEmpty());
+        CompletionStage<String> third = loader.load(3);
+
+        assertEquals(Arrays.asList(Arrays.asList(1, 2, 3)), batches);
+        assertEquals("value1", join(first));
+        assertEquals("value2", join(second));
+        assertEquals("value3", join(third));
+    }
+
+    @Test
+    public void shouldDeduplicateKeys() {
+        BatchLoader<Integer, String> loader = loader(bulkLoader, 10);
+
+        CompletionStage<String> first = loader.load(1);
+        loader.load(2);
+        CompletionStage<String> duplicate = loader.load(1);
+        loader.dispatch();
+
+        assertEquals("value1", join(first));
+        assertEquals("value1", join(duplicate));
+        assertEquals(Arrays.asList(Arrays.asList(1, 2)), batches);
+        assertEquals(3, loader.getRequestCount());
+        assertEquals(2, loader.getKeyCount());
+        assertEquals(1, loader.getBatchCount());
+    }
+
+    @Test
+    public void requestShouldNotAffectDuplicateRequests() {
+        BatchLoader<Integer, String> loader = loader(bulkLoader, 10);
+
+        CompletionStage<String> first = loader.load(1);
+        CompletionStage<String> duplicate = loader.load(1);
+        assertNotSame(first, duplicate);
+        ((CompletableCompletionStage<String>) first).complete("wrong");
+        loader.dispatch();
+
+        assertEquals("wrong", join(first));
+        assertEquals("value1", join(duplicate));
+    }
+
+    @Test
+    public void shouldDispatchAfterDelay() {
+        BatchLoader<Integer, String> loader = new BatchLoader<>(factory, bulkLoader, 10, 20, TimeUnit.MILLISECONDS);
+
+        CompletionStage<String> stage = loader.load(1);
+        loader.load(2);
+
+        assertEquals("value1", ((CompletableCompletionStage<String>) stage).orTimeout(1, TimeUnit.SECONDS).toCompletableFuture().join());
+        assertEquals(Arrays.asList(Arrays.asList(1, 2)), batches);
+    }
+
+    @Test
+    public void shouldNotDispatchBatchTwice() throws InterruptedException {
+        BatchLoader<Integer, String> loader = new BatchLoader<>(factory, bulkLoader, 10, 20, TimeUnit.MILLISECONDS);
+
+        loader.load(1);
+        loader.dispatch();
+        loader.dispatch();
+        Thread.sleep(100);
+
+        assertEquals(1, batches.size());
+    }
+
+    @Test
+    public void shouldStartNewBatchAfterDispatch() {
+        BatchLoader<Integer, String> loader = loader(bulkLoader, 2);
+
+        loader.load(1);
+        loader.load(2);
+        CompletionStage<String> stage = loader.load(1);
+        loader.dispatch();
+
+        assertEquals(Arrays.asList(Arrays.asList(1, 2), Arrays.asList(1)), batches);
+        assertEquals("value1", join(stage));
+    }
+
+    @Test
+    public void shouldLoadAllInOrder() {
+        BatchLoader<Integer, String> loader = loader(bulkLoader, 2);
+
+        CompletionStage<List<String>> stage = loader.loadAll(Arrays.asList(3, 1, 2));
+        loader.dispatch();
+
+        assertEquals(Arrays.asList("value3", "value1", "value2"), stage.toCompletableFuture().join());
+        assertEquals(2, batches.size());
+    }
+
+    @Test
+    public void shouldCompleteWhenBulkStageCompletes() {
+        CompletableCompletionStage<Map<Integer, String>> pending = factory.createCompletionStage();
+        BatchLoader<Integer, String> loader = loader(keys -> pending, 10);
+
+        CompletionStage<String> stage = loader.load(1);
+        loader.dispatch();
+        assertFalse(stage.toCompletableFuture().isDone());
+
+        Map<Integer, String> values = new HashMap<>();
+        values.put(1, "value");
+        pending.complete(values);
+
+        assertEquals("value", join(stage));
+    }
+
+    @Test
+    public void shouldFailAllStagesWhenBulkLoadFails() {
+        BatchLoader<Integer, String> loader = loader(keys -> factory.failedStage(EXCEPTION), 10);
+
+        CompletionStage<String> first = loader.load(1);
+        CompletionStage<String> second = loader.load(2);
+        loader.dispatch();
+
+        assertSame(EXCEPTION, failure(first));
+        assertSame(EXCEPTION, failure(second));
+    }
+
+    @Test
+    public void shouldFailAllStagesWhenBulkLoaderThrows() {
+        BatchLoader<Integer, String> loader = loader(keys -> {
+            throw EXCEPTION;
+        }, 2);
+
+        CompletionStage<String> first = loader.load(1);
+        CompletionStage<String> second = loader.load(2);
+
+        assertSame(EXCEPTION, failure(first));
+        assertSame(EXCEPTION, failure(second));
+    }
+
+    @Test
+    public void shouldFailMissingKey() {
+        BatchLoader<Integer, String> loader = loader(keys -> factory.completedStage(new HashMap<>()), 10);
+
+        CompletionStage<String> stage = loader.load(1);
+        loader.dispatch();
+
+        assertTrue(failure(stage) instanceof NoSuchElementException);
+    }
+
+    @Test
+    public void shouldLoadConcurrently() throws Exception {
+        int threads = 8;
+        BatchLoader<Integer, String> loader = new BatchLoader<>(factory, bulkLoader, 16, 10, TimeUnit.MILLISECONDS);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<List<CompletionStage<String>>>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    List<CompletionStage<String>> stages = new ArrayList<>();
+                    for (int i = 0; i < 1_000; i++) {
+                        stages.add(loader.load(i));
+                    }
+                    return stages;
+                }));
+            }
+            for (Future<List<CompletionStage<String>>> future : futures) {
+                List<CompletionStage<String>> stages = future.get();
+                for (int i = 0; i < stages.size(); i++) {
+                    assertEquals("value" + i, ((CompletableCompletionStage<String>) stages.get(i)).orTimeout(1, TimeUnit.SECONDS)
+                        .toCompletableFuture().join());
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(threads * 1_000, loader.getRequestCount());
+        assertEquals(loader.getKeyCount(), batches.stream().mapToInt(List::size).sum());
+        assertTrue(batches.stream().allMatch(batch -> batch.size() <= 16));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectNonPositiveBatchSize() {
+        new BatchLoader<>(factory, bulkLoader, 0, 1, TimeUnit.SECONDS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectNonPositiveDelay() {
+        new BatchLoader<>(factory, bulkLoader, 10, 0, TimeUnit.SECONDS);
+    }
+
+    private static String join(CompletionStage<String> stage) {
+        return stage.toCompletableFuture().join();
+    }
+
+    private static Throwable failure(CompletionStage<String> stage) {
+        try {
+            join(stage);
+            fail("Exception expected");
+            return null;
+        } catch (CompletionException e) {
+            return e.getCause();
+        }
+    }
+}
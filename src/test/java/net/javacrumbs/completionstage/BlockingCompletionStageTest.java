@@ -0,0 +1,153 @@
+/**
+ * Copyright 2009-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.completionstage;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BlockingCompletionStageTest {
+    private static final String VALUE = "value";
+    private static final RuntimeException EXCEPTION = new RuntimeException("test");
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private final CompletionStageFactory factory = new CompletionStageFactory(executor);
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void joinShouldReturnResultOfCompletedStage() {
+        CompletableCompletionStage<String> stage = factory.createCompletionStage();
+        stage.complete(VALUE);
+
+        assertEquals(VALUE, stage.join());
+    }
+
+    @Test
+    public void joinShouldWaitForResult() throws Exception {
+        CompletableCompletionStage<String> stage = factory.createCompletionStage();
+        Future<String> joined = executor.submit(stage::join);
+
+        Thread.sleep(50);
+        stage.complete(VALUE);
+
+        assertEquals(VALUE, joined.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void joinShouldThrowCompletionException() {
+        CompletableCompletionStage<String> stage = factory.createCompletionStage();
+        stage.completeExceptionally(EXCEPTION);
+
+        try {
+            stage.join();
+            fail("Exception expected");
+        } catch (CompletionException e) {
+            assertSame(EXCEPTION, e.getCause());
+        }
+    }
+
+    @Test
+    public void joinShouldNotWrapCancellationException() {
+        CompletableCompletionStage<String> stage = factory.createCompletionStage();
+        CancellationException cancellation = new CancellationException();
+        stage.completeExceptionally(cancellation);
+
+        try {
+            stage.join();
+            fail("Exception expected");
+        } catch (CancellationException e) {
+            assertSame(cancellation, e);
+        }
+    }
+
+    @Test
+    public void getShouldUnwrapCompletionException() throws Exception {
+        CompletableCompletionStage<String> stage = factory.createCompletionStage();
+        CompletionStage<String> failed = stage.thenApply(s -> {
+            throw EXCEPTION;
+        });
+        Future<?> completion = executor.submit(() -> stage.complete(VALUE));
+        completion.get();
+
+        try {
+            ((CompletableCompletionStage<String>) failed).get();
+            fail("Exception expected");
+        } catch (ExecutionException e) {
+            assertSame(EXCEPTION, e.getCause());
+        }
+    }
+
+    @Test(expected = TimeoutException.class)
+    public void getShouldTimeOut() throws Exception {
+        CompletableCompletionStage<String> stage = factory.createCompletionStage();
+        stage.get(10, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void getShouldBeInterruptible() throws Exception {
+        CompletableCompletionStage<String> stage = factory.createCompletionStage();
+        Thread current = Thread.currentThread();
+        executor.submit(() -> {
+            Thread.sleep(50);
+            current.interrupt();
+            return null;
+        });
+
+        try {
+            stage.get();
+            fail("Exception expected");
+        } catch (InterruptedException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void manyThreadsShouldBeWokenUp() throws Exception {
+        CompletableCompletionStage<String> stage = factory.createCompletionStage();
+        List<Future<String>> joined = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            joined.add(executor.submit(() -> stage.get(1, TimeUnit.SECONDS)));
+        }
+
+        Thread.sleep(50);
+        stage.complete(VALUE);
+
+        for (Future<String> future : joined) {
+            assertEquals(VALUE, future.get(1, TimeUnit.SECONDS));
+        }
+        assertTrue(stage.toCompletableFuture().isDone());
+    }
+}
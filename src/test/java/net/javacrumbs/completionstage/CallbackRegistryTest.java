@@ -0,0 +1,393 @@
+/**
+ * Copyright 2009-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.completionstage;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CallbackRegistryTest {
+    private static final int THREADS = 8;
+    private static final int CALLBACKS_PER_THREAD = 1_000;
+    private static final RuntimeException EXCEPTION = new RuntimeException("test");
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(THREADS + 2);
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void callbacksShouldBeCalledInRegistrationOrder() {
+        CallbackRegistry<String> registry = new CallbackRegistry<>();
+        List<String> calls = new ArrayList<>();
+        registry.addCallbacks(r -> calls.add("first"), e -> calls.add("first failed"), Runnable::run);
+        registry.addCallbacks(r -> calls.add("second"), e -> calls.add("second failed"), Runnable::run);
+        registry.addCallbacks(r -> calls.add("third"), e -> calls.add("third failed"), Runnable::run);
+
+        assertTrue(registry.success("value"));
+
+        assertThat(calls).containsExactly("first", "second", "third");
+    }
+
+    @Test
+    public void singleCallbackShouldBeCalled() {
+        CallbackRegistry<String> registry = new CallbackRegistry<>();
+        List<Object> calls = new ArrayList<>();
+        registry.addCallbacks(calls::add, calls::add, Runnable::run);
+
+        assertTrue(registry.failure(EXCEPTION));
+
+        assertThat(calls).containsExactly(EXCEPTION);
+    }
+
+    @Test
+    public void secondCallbackShouldKeepTheFirstOne() {
+        CallbackRegistry<String> registry = new CallbackRegistry<>();
+        List<String> calls = new ArrayList<>();
+        registry.addCallbacks(r -> calls.add("first"), e -> calls.add("first failed"), Runnable::run);
+        registry.addCallbacks(r -> calls.add("second"), e -> calls.add("second failed"), Runnable::run);
+
+        assertTrue(registry.failure(EXCEPTION));
+
+        assertThat(calls).containsExactly("first failed", "second failed");
+    }
+
+    @Test
+    public void onlyTheFirstCompletionShouldWin() {
+        CallbackRegistry<String> registry = new CallbackRegistry<>();
+        assertTrue(registry.failure(EXCEPTION));
+        assertFalse(registry.success("value"));
+        assertFalse(registry.failure(EXCEPTION));
+    }
+
+    @Test
+    public void everyCallbackShouldBeCalledExactlyOnceWhenRacingWithSuccess() throws Exception {
+        for (int i = 0; i < 50; i++) {
+            CallbackRegistry<Integer> registry = new CallbackRegistry<>();
+            AtomicInteger successes = new AtomicInteger();
+            AtomicInteger failures = new AtomicInteger();
+            AtomicInteger winners = new AtomicInteger();
+
+            runConcurrently(
+                    () -> {
+                        for (int j = 0; j < CALLBACKS_PER_THREAD; j++) {
+                            registry.addCallbacks(r -> successes.incrementAndGet(), e -> failures.incrementAndGet(), Runnable::run);
+                        }
+                    },
+                    () -> {
+                        if (registry.success(1)) {
+                            winners.incrementAndGet();
+                        }
+                    },
+                    () -> {
+                        if (registry.failure(EXCEPTION)) {
+                            winners.incrementAndGet();
+                        }
+                    }
+            );
+
+            assertThat(winners.get()).isEqualTo(1);
+            assertThat(successes.get() + failures.get()).isEqualTo(THREADS * CALLBACKS_PER_THREAD);
+            assertThat(successes.get() == 0 || failures.get() == 0).isTrue();
+        }
+    }
+
+    @Test
+    public void manyCallbacksShouldBeSubmittedInSlices() {
+        CallbackRegistry<Integer> registry = new CallbackRegistry<>();
+        AtomicInteger submitted = new AtomicInteger();
+        Executor countingExecutor = new BatchingExecutor(command -> {
+            submitted.incrementAndGet();
+            command.run();
+        });
+        List<Integer> calls = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            int index = i;
+            registry.addCallbacks(r -> calls.add(index), e -> calls.add(-1), countingExecutor);
+        }
+
+        assertTrue(registry.success(1));
+
+        assertThat(calls).hasSize(1_000).isSorted();
+        assertThat(submitted.get()).isBetween(1, 1_000 / 16);
+    }
+
+    @Test
+    public void fewCallbacksShouldNotBeBatched() {
+        CallbackRegistry<Integer> registry = new CallbackRegistry<>();
+        AtomicInteger submitted = new AtomicInteger();
+        Executor countingExecutor = new BatchingExecutor(command -> {
+            submitted.incrementAndGet();
+            command.run();
+        });
+        for (int i = 0; i < 10; i++) {
+            registry.addCallbacks(r -> { }, e -> { }, countingExecutor);
+        }
+
+        assertTrue(registry.success(1));
+
+        assertThat(submitted.get()).isEqualTo(10);
+    }
+
+    @Test
+    public void batchedCallbacksShouldRunOnTheirOwnExecutors() {
+        CallbackRegistry<Integer> registry = new CallbackRegistry<>();
+        ThreadLocal<String> runningOn = new ThreadLocal<>();
+        Executor first = new BatchingExecutor(named("first", runningOn));
+        Executor second = new BatchingExecutor(named("second", runningOn));
+        List<String> firstCalls = new ArrayList<>();
+        List<String> secondCalls = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            registry.addCallbacks(r -> firstCalls.add(runningOn.get()), e -> { }, first);
+            registry.addCallbacks(r -> secondCalls.add(runningOn.get()), e -> { }, second);
+        }
+
+        assertTrue(registry.success(1));
+
+        assertThat(firstCalls).hasSize(500).containsOnly("first");
+        assertThat(secondCalls).hasSize(500).containsOnly("second");
+    }
+
+    @Test
+    public void failingCallbackShouldNotStopTheBatch() {
+        CallbackRegistry<Integer> registry = new CallbackRegistry<>();
+        AtomicInteger failures = new AtomicInteger();
+        Executor catchingExecutor = new BatchingExecutor(command -> {
+            try {
+                command.run();
+            } catch (RuntimeException e) {
+                // reported by the executor
+            }
+        });
+        registry.addCallbacks(r -> { }, e -> {
+            throw new IllegalStateException("test");
+        }, catchingExecutor);
+        for (int i = 0; i < 199; i++) {
+            registry.addCallbacks(r -> { }, e -> failures.incrementAndGet(), catchingExecutor);
+        }
+
+        assertTrue(registry.failure(EXCEPTION));
+
+        assertThat(failures.get()).isEqualTo(199);
+    }
+
+    @Test
+    public void everyBatchedCallbackShouldBeCalledOnPool() throws InterruptedException {
+        CallbackRegistry<Integer> registry = new CallbackRegistry<>();
+        int callbacks = 10_000;
+        CountDownLatch done = new CountDownLatch(callbacks);
+        Executor batchingExecutor = new BatchingExecutor(executor);
+        for (int i = 0; i < callbacks; i++) {
+            registry.addCallbacks(r -> done.countDown(), e -> { }, batchingExecutor);
+        }
+
+        assertTrue(registry.success(1));
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void callbacksShouldNotBeBatchedByDefault() {
+        CallbackRegistry<Integer> registry = new CallbackRegistry<>();
+        AtomicInteger submitted = new AtomicInteger();
+        Executor countingExecutor = command -> {
+            submitted.incrementAndGet();
+            command.run();
+        };
+        for (int i = 0; i < 1_000; i++) {
+            registry.addCallbacks(r -> { }, e -> { }, countingExecutor);
+        }
+
+        assertTrue(registry.success(1));
+
+        assertThat(submitted.get()).isEqualTo(1_000);
+    }
+
+    @Test
+    public void blockingCallbacksShouldRunInParallel() throws InterruptedException {
+        CallbackRegistry<Integer> registry = new CallbackRegistry<>();
+        int callbacks = 100;
+        // every callback waits for all the others, it passes only if all of them run at once
+        CountDownLatch started = new CountDownLatch(callbacks);
+        CountDownLatch done = new CountDownLatch(callbacks);
+        Executor threadPerTask = command -> new Thread(command).start();
+        for (int i = 0; i < callbacks; i++) {
+            registry.addCallbacks(r -> {
+                started.countDown();
+                try {
+                    if (started.await(10, TimeUnit.SECONDS)) {
+                        done.countDown();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, e -> { }, threadPerTask);
+        }
+
+        assertTrue(registry.success(1));
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void timedOutWaitersShouldNotPileUp() throws InterruptedException {
+        CallbackRegistry<Integer> registry = new CallbackRegistry<>();
+        AtomicInteger following = new AtomicInteger(-1);
+        registry.addCallback(new FollowingCountingCallback(following));
+        registry.addCallbacks(r -> { }, e -> { }, Runnable::run);
+        for (int i = 0; i < 10_000; i++) {
+            assertFalse(registry.await(1L));
+        }
+
+        assertTrue(registry.success(1));
+
+        assertThat(following.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void timedOutWaiterShouldBeRemovedFromEmptyRegistry() throws InterruptedException {
+        CallbackRegistry<Integer> registry = new CallbackRegistry<>();
+        for (int i = 0; i < 10_000; i++) {
+            assertFalse(registry.await(1L));
+        }
+        AtomicInteger following = new AtomicInteger(-1);
+        registry.addCallback(new FollowingCountingCallback(following));
+
+        assertTrue(registry.success(1));
+
+        assertThat(following.get()).isEqualTo(0);
+    }
+
+    @Test
+    public void concurrentlyTimedOutWaitersShouldNotPileUp() throws Exception {
+        CallbackRegistry<Integer> registry = new CallbackRegistry<>();
+        AtomicInteger following = new AtomicInteger(-1);
+        registry.addCallback(new FollowingCountingCallback(following));
+        runConcurrently(() -> {
+            for (int i = 0; i < CALLBACKS_PER_THREAD; i++) {
+                try {
+                    registry.await(1L);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        });
+        // cleaning is best effort, a waiter unlinked by one thread may hide a waiter unlinked by another one
+        registry.await(1L);
+
+        assertTrue(registry.success(1));
+
+        assertThat(following.get()).isBetween(0, THREADS);
+    }
+
+    @Test
+    public void noCallbackShouldBeLostWhenWaitersAreRemoved() throws Exception {
+        CallbackRegistry<Integer> registry = new CallbackRegistry<>();
+        AtomicInteger calls = new AtomicInteger();
+        runConcurrently(() -> {
+            for (int i = 0; i < CALLBACKS_PER_THREAD; i++) {
+                registry.addCallbacks(r -> calls.incrementAndGet(), e -> { }, Runnable::run);
+                try {
+                    registry.await(1L);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }, () -> registry.success(1));
+
+        assertThat(calls.get()).isEqualTo(THREADS * CALLBACKS_PER_THREAD);
+    }
+
+    private static Executor named(String name, ThreadLocal<String> runningOn) {
+        return command -> {
+            runningOn.set(name);
+            try {
+                command.run();
+            } finally {
+                runningOn.remove();
+            }
+        };
+    }
+
+    private void runConcurrently(Runnable addingTask, Runnable... completingTasks) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(executor.submit(awaiting(start, addingTask)));
+        }
+        for (Runnable completingTask : completingTasks) {
+            futures.add(executor.submit(awaiting(start, completingTask)));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private static Runnable awaiting(CountDownLatch start, Runnable task) {
+        return () -> {
+            try {
+                start.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            task.run();
+        };
+    }
+
+    /**
+     * Records how many callbacks follow it when it is the first one of the registry.
+     */
+    private static final class FollowingCountingCallback extends CallbackRegistry.Callback<Integer> {
+        private final AtomicInteger following;
+
+        private FollowingCountingCallback(AtomicInteger following) {
+            super(Runnable::run);
+            this.following = following;
+        }
+
+        @Override
+        void callSuccessCallback(Integer result) {
+            following.set(countFollowing());
+        }
+
+        @Override
+        protected void onSuccess(Integer result) {
+        }
+
+        @Override
+        protected void onFailure(Throwable failure) {
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ * Copyright 2009-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.completionstage;
+
+import org.junit.Test;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+public class CancellationTest {
+    private final Executor executor = mock(Executor.class);
+    private final CompletionStageFactory factory = new CompletionStageFactory(executor);
+    private final CompletableCompletionStage<String> stage = factory.createCompletionStage();
+
+    @Test
+    public void cancelShouldCompleteStageWithCancellationException() {
+        assertTrue(stage.cancel());
+
+        assertTrue(stage.isDone());
+        assertTrue(stage.isCancelled());
+        assertFalse(stage.cancel());
+        assertFalse(stage.complete("value"));
+    }
+
+    @Test
+    public void dependentsOfCancelledStageShouldNotBeSentToExecutor() {
+        Function<String, String> fn = mockFunction();
+        CompletionStage<String> next = stage.thenApplyAsync(fn).thenApplyAsync(fn);
+
+        stage.cancel();
+
+        verifyZeroInteractions(executor, fn);
+        CompletableFuture<String> future = next.toCompletableFuture();
+        assertTrue(future.isCompletedExceptionally());
+        assertTrue(causeOf(future) instanceof CancellationException);
+    }
+
+    @Test
+    public void handleShouldSeeCancellation() {
+        BiFunction<String, Throwable, String> fn = mockHandler();
+        stage.handle(fn);
+
+        stage.cancel();
+
+        verify(fn).apply(any(String.class), any(CancellationException.class));
+    }
+
+    @Test
+    public void functionShouldNotBeCalledWhenNextStageIsCancelled() {
+        Function<String, String> fn = mockFunction();
+        CompletionStage<String> next = stage.thenApply(fn);
+
+        ((CompletableCompletionStage<String>) next).cancel();
+        stage.complete("value");
+
+        verifyZeroInteractions(fn);
+    }
+
+    @Test
+    public void cancellationShouldPropagateToComposedStage() {
+        CompletableCompletionStage<String> source = factory.createCompletionStage();
+        CompletionStage<String> composed = stage.thenCompose(value -> source);
+        stage.complete("value");
+
+        ((CompletableCompletionStage<String>) composed).cancel();
+
+        assertTrue(source.isCancelled());
+    }
+
+    @Test
+    public void cancellationShouldPropagateToComposedCompletableFuture() {
+        CompletableFuture<String> source = new CompletableFuture<>();
+        CompletionStage<String> composed = stage.thenCompose(value -> source);
+        stage.complete("value");
+
+        ((CompletableCompletionStage<String>) composed).cancel();
+
+        assertTrue(source.isCancelled());
+    }
+
+    @Test
+    public void composedStageShouldNotBeCancelledOnSuccess() {
+        CompletableCompletionStage<String> source = factory.createCompletionStage();
+        CompletionStage<String> composed = stage.thenCompose(value -> source);
+        stage.complete("value");
+        source.complete("result");
+
+        assertFalse(((CompletableCompletionStage<String>) composed).cancel());
+        assertFalse(source.isCancelled());
+    }
+
+    @Test
+    public void completedComposedStageShouldNotBeCancelled() {
+        CompletableFuture<String> source = CompletableFuture.completedFuture("result");
+        CompletionStage<String> composed = stage.thenCompose(value -> source);
+        stage.complete("value");
+
+        assertFalse(((CompletableCompletionStage<String>) composed).cancel());
+        assertFalse(source.isCancelled());
+    }
+
+    private static Throwable causeOf(CompletableFuture<?> future) {
+        try {
+            future.join();
+            throw new AssertionError("Exception expected");
+        } catch (CompletionException e) {
+            return e.getCause();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Function<String, String> mockFunction() {
+        return mock(Function.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    private BiFunction<String, Throwable, String> mockHandler() {
+        return mock(BiFunction.class);
+    }
+}
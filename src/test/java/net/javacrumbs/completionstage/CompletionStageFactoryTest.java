@@ -23,11 +23,23 @@ import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
@@ -39,7 +51,9 @@ import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
@@ -83,6 +97,43 @@ public class CompletionStageFactoryTest {
         assertEquals(TEST_VALUE, future.get());
     }
 
+    @Test
+    public void completedStagesOfCommonValuesShouldBeShared() {
+        assertSame(factory.completedStage(null), factory.completedStage(null));
+        assertSame(factory.completedStage(Boolean.TRUE), factory.completedStage(true));
+        assertSame(factory.completedStage(Boolean.FALSE), factory.completedStage(false));
+        assertSame(factory.completedStage(Optional.empty()), factory.completedStage(Optional.empty()));
+    }
+
+    @Test
+    public void failedStageTest() throws Exception {
+        CompletionStage<String> stage = factory.failedStage(TEST_EXCEPTION);
+
+        CompletableFuture<String> future = stage.toCompletableFuture();
+        assertTrue(future.isCompletedExceptionally());
+        try {
+            future.get();
+            fail("Exception expected");
+        } catch (ExecutionException e) {
+            assertSame(TEST_EXCEPTION, e.getCause());
+        }
+    }
+
+    @Test
+    public void completedStagesShouldBeCreatedByOverriddenCreateCompletionStage() throws Exception {
+        CustomStageFactory customFactory = new CustomStageFactory(defaultExecutor);
+
+        CompletionStage<String> stage = customFactory.completedStage(TEST_VALUE);
+        CompletionStage<String> nullStage = customFactory.completedStage(null);
+        CompletionStage<String> failed = customFactory.failedStage(TEST_EXCEPTION);
+
+        assertTrue(stage instanceof CustomStage);
+        assertTrue(nullStage instanceof CustomStage);
+        assertTrue(failed instanceof CustomStage);
+        assertEquals(TEST_VALUE, stage.toCompletableFuture().get());
+        assertTrue(failed.toCompletableFuture().isCompletedExceptionally());
+    }
+
     private static void executeCapturedRunnable(ArgumentCaptor<Runnable> runnableCaptor) {
         runnableCaptor.getValue().run();
     }
@@ -184,4 +235,272 @@ public class CompletionStageFactoryTest {
 
         doSupplyAsyncTest(executor, stage, runnable, null);
     }
+
+    @Test
+    public void asyncTasksShouldReturnStagesCreatedByOverriddenCreateCompletionStage() throws Exception {
+        when(supplier.get()).thenReturn(TEST_VALUE);
+        CustomStageFactory customFactory = new CustomStageFactory(defaultExecutor);
+
+        CompletionStage<String> supplied = customFactory.supplyAsync(supplier);
+        assertTrue(supplied instanceof CustomStage);
+        doSupplyAsyncTest(defaultExecutor, supplied, supplier, TEST_VALUE);
+
+        CompletionStage<Void> run = customFactory.runAsync(runnable, alternativeExecutor);
+        assertTrue(run instanceof CustomStage);
+        doSupplyAsyncTest(alternativeExecutor, run, runnable, null);
+    }
+
+    @Test
+    public void lazySupplyAsyncShouldSubmitTaskOnFirstCallback() throws Exception {
+        when(supplier.get()).thenReturn(TEST_VALUE);
+
+        CompletionStage<String> stage = factory.lazySupplyAsync(supplier, alternativeExecutor);
+        verifyZeroInteractions(alternativeExecutor);
+
+        stage.thenAccept(consumer);
+        stage.thenAccept(consumer);
+        verify(alternativeExecutor).execute(runnableCaptor.capture());
+        executeCapturedRunnable(runnableCaptor);
+
+        verify(supplier).get();
+        verify(consumer, times(2)).accept(TEST_VALUE);
+    }
+
+    @Test
+    public void lazySupplyAsyncShouldSubmitTaskOnToCompletableFuture() throws Exception {
+        when(supplier.get()).thenReturn(TEST_VALUE);
+
+        CompletionStage<String> stage = factory.lazySupplyAsync(supplier);
+
+        doSupplyAsyncTest(defaultExecutor, stage, supplier, TEST_VALUE);
+    }
+
+    @Test
+    public void lazySupplyAsyncShouldSubmitTaskOnJoin() {
+        CompletionStage<String> stage = new CompletionStageFactory(Runnable::run).lazySupplyAsync(() -> TEST_VALUE);
+
+        assertEquals(TEST_VALUE, ((CompletableCompletionStage<String>) stage).join());
+    }
+
+    @Test
+    public void lazySupplyAsyncShouldNotSubmitTaskOfCancelledStage() {
+        CompletableCompletionStage<String> stage = (CompletableCompletionStage<String>) factory.lazySupplyAsync(supplier);
+
+        assertTrue(stage.cancel());
+        stage.thenAccept(consumer);
+
+        verifyZeroInteractions(defaultExecutor, supplier, consumer);
+    }
+
+    @Test
+    public void lazySupplyAsyncShouldNotBeStartedByMetrics() {
+        CompletionStageFactory factory = new CompletionStageFactory(defaultExecutor, false, new CompletionStageMetrics());
+
+        CompletionStage<String> stage = factory.lazySupplyAsync(supplier);
+        verifyZeroInteractions(defaultExecutor);
+
+        stage.thenAccept(consumer);
+        verify(defaultExecutor).execute(any(Runnable.class));
+    }
+
+    @Test
+    public void lazySupplyAsyncShouldNotBeStartedByTimeout() {
+        CompletableCompletionStage<String> stage = (CompletableCompletionStage<String>) factory.lazySupplyAsync(supplier);
+
+        stage.orTimeout(1, TimeUnit.HOURS);
+        stage.completeOnTimeout(TEST_VALUE, 1, TimeUnit.HOURS);
+
+        verifyZeroInteractions(defaultExecutor, supplier);
+        stage.cancel();
+    }
+
+    @Test
+    public void lazySupplyAsyncShouldStayLazyWithOverriddenCreateCompletionStage() {
+        CustomStageFactory customFactory = new CustomStageFactory(defaultExecutor);
+
+        CompletionStage<String> stage = customFactory.lazySupplyAsync(supplier);
+
+        assertFalse(stage instanceof CustomStage);
+        verifyZeroInteractions(defaultExecutor, supplier);
+        assertTrue(stage.thenApply(String::length) instanceof CustomStage);
+        verify(defaultExecutor).execute(any(Runnable.class));
+    }
+
+    @Test
+    public void lazySupplyAsyncShouldReportRejectionAsResult() {
+        RejectedExecutionException rejection = new RejectedExecutionException();
+        doThrow(rejection).when(alternativeExecutor).execute(any(Runnable.class));
+
+        CompletionStage<String> stage = factory.lazySupplyAsync(supplier, alternativeExecutor);
+
+        try {
+            ((CompletableCompletionStage<String>) stage).join();
+            fail("Exception expected");
+        } catch (CompletionException e) {
+            assertSame(rejection, e.getCause());
+        }
+        verifyZeroInteractions(supplier);
+    }
+
+    @Test
+    public void lazySupplyAsyncShouldCallSupplierOnceWhenConsumersRace() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CompletionStageFactory factory = new CompletionStageFactory(Runnable::run);
+        try {
+            for (int i = 0; i < 100; i++) {
+                CompletionStage<Integer> stage = factory.lazySupplyAsync(calls::incrementAndGet);
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<Integer>> results = new ArrayList<>();
+                for (int j = 0; j < 8; j++) {
+                    results.add(executor.submit(() -> {
+                        start.await();
+                        return stage.thenApply(v -> v).toCompletableFuture().get();
+                    }));
+                }
+                start.countDown();
+                for (Future<Integer> result : results) {
+                    assertEquals(Integer.valueOf(i + 1), result.get());
+                }
+            }
+            assertEquals(100, calls.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void allOfShouldCollectResultsInOrder() throws Exception {
+        CompletableCompletionStage<String> first = factory.createCompletionStage();
+        CompletableCompletionStage<String> second = factory.createCompletionStage();
+        CompletableFuture<String> third = new CompletableFuture<>();
+
+        CompletableFuture<List<String>> future = factory.allOf(Arrays.<CompletionStage<String>>asList(first, second, third)).toCompletableFuture();
+
+        second.complete("2");
+        third.complete("3");
+        assertFalse(future.isDone());
+
+        first.complete("1");
+        assertEquals(Arrays.asList("1", "2", "3"), future.get());
+    }
+
+    @Test
+    public void allOfEmptyCollectionShouldReturnEmptyList() throws Exception {
+        CompletionStage<List<String>> stage = factory.allOf(Collections.<CompletionStage<String>>emptyList());
+
+        assertEquals(Collections.emptyList(), stage.toCompletableFuture().get());
+    }
+
+    @Test
+    public void allOfShouldFailAsSoonAsOneStageFails() throws Exception {
+        CompletableCompletionStage<String> first = factory.createCompletionStage();
+        CompletableCompletionStage<String> second = factory.createCompletionStage();
+
+        CompletableFuture<List<String>> future = factory.allOf(Arrays.asList(first, second)).toCompletableFuture();
+        second.completeExceptionally(TEST_EXCEPTION);
+
+        assertTrue(future.isCompletedExceptionally());
+        try {
+            future.get();
+            fail("Exception expected");
+        } catch (ExecutionException e) {
+            assertSame(TEST_EXCEPTION, e.getCause());
+        }
+    }
+
+    @Test
+    public void anyOfShouldTakeFirstResult() throws Exception {
+        CompletableCompletionStage<String> first = factory.createCompletionStage();
+        CompletableCompletionStage<String> second = factory.createCompletionStage();
+
+        CompletableFuture<String> future = factory.anyOf(Arrays.asList(first, second)).toCompletableFuture();
+        second.complete("2");
+        first.completeExceptionally(TEST_EXCEPTION);
+
+        assertEquals("2", future.get());
+    }
+
+    @Test
+    public void anyOfShouldPropagateFirstFailure() throws Exception {
+        CompletableCompletionStage<String> first = factory.createCompletionStage();
+
+        CompletableFuture<String> future = factory.anyOf(Arrays.asList(first, factory.<String>failedStage(TEST_EXCEPTION))).toCompletableFuture();
+        first.complete(TEST_VALUE);
+
+        try {
+            future.get();
+            fail("Exception expected");
+        } catch (ExecutionException e) {
+            assertSame(TEST_EXCEPTION, e.getCause());
+        }
+    }
+
+    @Test
+    public void anyOfEmptyCollectionShouldNeverComplete() {
+        CompletionStage<String> stage = factory.anyOf(Collections.<CompletionStage<String>>emptyList());
+
+        assertFalse(stage.toCompletableFuture().isDone());
+    }
+
+    @Test
+    public void combinatorsShouldReturnStagesCreatedByOverriddenCreateCompletionStage() throws Exception {
+        CustomStageFactory customFactory = new CustomStageFactory(defaultExecutor);
+        CompletableCompletionStage<String> first = customFactory.createCompletionStage();
+        CompletableCompletionStage<String> second = customFactory.createCompletionStage();
+
+        CompletionStage<List<String>> all = customFactory.allOf(Arrays.asList(first, second));
+        CompletionStage<String> any = customFactory.anyOf(Arrays.asList(first, second));
+        CompletionStage<List<String>> empty = customFactory.allOf(Collections.<CompletionStage<String>>emptyList());
+        second.complete("2");
+        first.complete("1");
+
+        assertTrue(all instanceof CustomStage);
+        assertTrue(any instanceof CustomStage);
+        assertTrue(empty instanceof CustomStage);
+        assertEquals(Arrays.asList("1", "2"), all.toCompletableFuture().get());
+        assertEquals("2", any.toCompletableFuture().get());
+        assertEquals(Collections.emptyList(), empty.toCompletableFuture().get());
+    }
+
+    @Test
+    public void virtualThreadsShouldRunTasksOnVirtualThreadsWhenSupported() throws Exception {
+        if (VirtualThreads.isSupported()) {
+            CompletionStage<Boolean> stage = CompletionStageFactory.virtualThreads()
+                    .supplyAsync(() -> isVirtual(Thread.currentThread()));
+            assertTrue(stage.toCompletableFuture().get());
+        } else {
+            try {
+                CompletionStageFactory.virtualThreads();
+                fail("Exception expected");
+            } catch (UnsupportedOperationException e) {
+                // expected on Java 8
+            }
+        }
+    }
+
+    private static boolean isVirtual(Thread thread) {
+        try {
+            return (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+        } catch (ReflectiveOperationException e) {
+            return false;
+        }
+    }
+
+    private static class CustomStageFactory extends CompletionStageFactory {
+        private CustomStageFactory(Executor defaultAsyncExecutor) {
+            super(defaultAsyncExecutor);
+        }
+
+        @Override
+        public <T> CompletableCompletionStage<T> createCompletionStage() {
+            return new CustomStage<>(getDefaultAsyncExecutor(), this);
+        }
+    }
+
+    private static class CustomStage<T> extends SimpleCompletionStage<T> {
+        private CustomStage(Executor defaultExecutor, CompletionStageFactory completionStageFactory) {
+            super(defaultExecutor, completionStageFactory);
+        }
+    }
 }
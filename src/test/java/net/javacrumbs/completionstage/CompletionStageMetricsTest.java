@@ -0,0 +1,138 @@
+/**
+ * Copyright 2009-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.completionstage;
+
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CompletionStageMetricsTest {
+    private static final RuntimeException EXCEPTION = new RuntimeException("test");
+
+    private final CompletionStageMetrics metrics = new CompletionStageMetrics();
+    private final CompletionStageFactory factory = new CompletionStageFactory(Runnable::run, false, metrics);
+
+    @Test
+    public void shouldCountCreatedAndPendingStages() {
+        CompletableCompletionStage<Integer> stage = factory.createCompletionStage();
+        stage.thenApply(i -> i + 1);
+
+        assertEquals(2, metrics.getCreated());
+        assertEquals(2, metrics.getPending());
+        assertEquals(0, metrics.getCompleted());
+    }
+
+    @Test
+    public void shouldCountCompletedStages() {
+        CompletableCompletionStage<Integer> stage = factory.createCompletionStage();
+        stage.thenApply(i -> i + 1).thenAccept(i -> { });
+
+        stage.complete(1);
+
+        assertEquals(3, metrics.getCreated());
+        assertEquals(3, metrics.getCompleted());
+        assertEquals(0, metrics.getFailed());
+        assertEquals(0, metrics.getPending());
+    }
+
+    @Test
+    public void shouldCountFailedStages() {
+        CompletableCompletionStage<Integer> stage = factory.createCompletionStage();
+        stage.thenApply(i -> i + 1);
+        CompletableCompletionStage<Integer> cancelled = factory.createCompletionStage();
+
+        stage.completeExceptionally(EXCEPTION);
+        cancelled.cancel();
+
+        assertEquals(3, metrics.getFailed());
+        assertEquals(0, metrics.getCompleted());
+        assertEquals(0, metrics.getPending());
+    }
+
+    @Test
+    public void shouldCountDependentsRegisteredBeforeCompletion() {
+        CompletableCompletionStage<Integer> stage = factory.createCompletionStage();
+        stage.thenAccept(i -> { });
+        stage.thenAccept(i -> { });
+        stage.thenAccept(i -> { });
+
+        stage.complete(1);
+
+        // 3 dependents of the first stage, none of the three next stages
+        assertEquals(4, metrics.getCompleted());
+        assertEquals(0.75, metrics.getAverageDependents(), 0.001);
+    }
+
+    @Test
+    public void shouldCountStagesOfFactoryMethods() {
+        factory.supplyAsync(() -> 1);
+        factory.runAsync(() -> { });
+        factory.allOf(Arrays.asList(factory.completedStage(1), factory.completedStage(2)));
+        factory.anyOf(Arrays.asList(factory.completedStage(1), factory.createCompletionStage()));
+
+        assertEquals(5, metrics.getCreated());
+        assertEquals(4, metrics.getCompleted());
+        assertEquals(1, metrics.getPending());
+    }
+
+    @Test
+    public void asyncMethodsOfCompletedStagesShouldCreateOnlyTheNextStage() {
+        CompletionStage<Integer> stage = factory.completedStage(1);
+        stage.thenApplyAsync(v -> v + 1);
+        stage.thenComposeAsync(v -> factory.completedStage(v));
+        stage.thenCombineAsync(factory.completedStage(2), Integer::sum);
+        factory.<Integer>failedStage(EXCEPTION).handleAsync((v, e) -> 0);
+
+        assertEquals(4, metrics.getCreated());
+        assertEquals(4, metrics.getCompleted());
+        assertEquals(0, metrics.getPending());
+    }
+
+    @Test
+    public void shouldMeasureCompletionTime() {
+        CompletionStage<Void> stage = factory.delayedStage(30, TimeUnit.MILLISECONDS);
+
+        ((CompletableCompletionStage<Void>) stage).join();
+
+        assertEquals(1, metrics.getCompleted());
+        assertTrue(metrics.getMaxCompletionTimeMicros() >= 30_000);
+        assertTrue(metrics.getAverageCompletionTimeMicros() >= 30_000);
+    }
+
+    @Test
+    public void shouldExposeMetricsAsMBean() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = metrics.registerMBean("test");
+        try {
+            factory.createCompletionStage().complete(1);
+
+            assertEquals(name, new ObjectName("net.javacrumbs.completionstage:type=CompletionStageMetrics,name=\"test\""));
+            assertEquals(1L, server.getAttribute(name, "Created"));
+            assertEquals(1L, server.getAttribute(name, "Completed"));
+            assertEquals(0L, server.getAttribute(name, "Pending"));
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright 2009-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.completionstage;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HashedWheelTimerTest {
+    // small wheel so that timeouts need more rounds
+    private final HashedWheelTimer timer = new HashedWheelTimer(Runnable::run, TimeUnit.MILLISECONDS.toNanos(1), 8);
+
+    @Test
+    public void taskShouldBeExecutedAfterDelay() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        long start = System.nanoTime();
+        HashedWheelTimer.Timeout timeout = timer.schedule(latch::countDown, 30, TimeUnit.MILLISECONDS);
+
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(30));
+        assertTrue(timeout.isExpired());
+        assertFalse(timeout.cancel());
+    }
+
+    @Test
+    public void cancelledTaskShouldNotBeExecuted() throws InterruptedException {
+        AtomicInteger executed = new AtomicInteger();
+        HashedWheelTimer.Timeout timeout = timer.schedule(executed::incrementAndGet, 20, TimeUnit.MILLISECONDS);
+
+        assertTrue(timeout.cancel());
+        assertTrue(timeout.isCancelled());
+        assertFalse(timeout.cancel());
+
+        Thread.sleep(50);
+        assertEquals(0, executed.get());
+    }
+
+    @Test
+    public void tasksWhichWereNotCancelledShouldBeExecutedOnce() throws InterruptedException {
+        int count = 1_000;
+        AtomicInteger executed = new AtomicInteger();
+        List<HashedWheelTimer.Timeout> timeouts = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            timeouts.add(timer.schedule(executed::incrementAndGet, i % 50, TimeUnit.MILLISECONDS));
+        }
+        int cancelled = 0;
+        for (int i = 0; i < count; i += 2) {
+            if (timeouts.get(i).cancel()) {
+                cancelled++;
+            }
+        }
+
+        Thread.sleep(200);
+        assertEquals(count - cancelled, executed.get());
+        for (HashedWheelTimer.Timeout timeout : timeouts) {
+            assertTrue(timeout.isCancelled() || timeout.isExpired());
+        }
+    }
+
+    @Test
+    public void rejectedTaskShouldBeExecutedByTimerThread() throws InterruptedException {
+        HashedWheelTimer rejectingTimer = new HashedWheelTimer(command -> {
+            throw new RejectedExecutionException("test");
+        }, TimeUnit.MILLISECONDS.toNanos(1), 8);
+        CountDownLatch latch = new CountDownLatch(1);
+        HashedWheelTimer.Timeout timeout = rejectingTimer.schedule(latch::countDown, 10, TimeUnit.MILLISECONDS);
+
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+        assertTrue(timeout.isExpired());
+    }
+}
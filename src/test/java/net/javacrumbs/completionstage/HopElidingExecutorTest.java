@@ -0,0 +1,179 @@
+/**
+ * Copyright 2009-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.completionstage;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class HopElidingExecutorTest {
+    private final ExecutorService pool = Executors.newSingleThreadExecutor();
+    private final ExecutorService otherPool = Executors.newSingleThreadExecutor();
+
+    @After
+    public void shutdown() {
+        pool.shutdownNow();
+        otherPool.shutdownNow();
+    }
+
+    @Test
+    public void dependentsOfStageCompletedInPoolShouldRunInline() {
+        HopElidingExecutor executor = new HopElidingExecutor(pool);
+        CompletableCompletionStage<Integer> stage = new CompletionStageFactory(executor).createCompletionStage();
+        CompletableCompletionStage<Integer> result = chain(stage, 5);
+
+        executor.execute(() -> stage.complete(0));
+
+        assertEquals(Integer.valueOf(5), result.join());
+        assertEquals(1, executor.getHopCount());
+        assertEquals(5, executor.getElidedHopCount());
+    }
+
+    @Test
+    public void firstDependentShouldHopWhenCompletedOutsideOfPool() {
+        HopElidingExecutor executor = new HopElidingExecutor(pool);
+        CompletableCompletionStage<Integer> stage = new CompletionStageFactory(executor).createCompletionStage();
+        CompletableCompletionStage<Integer> result = chain(stage, 5);
+
+        stage.complete(0);
+
+        assertEquals(Integer.valueOf(5), result.join());
+        assertEquals(1, executor.getHopCount());
+        assertEquals(4, executor.getElidedHopCount());
+    }
+
+    @Test
+    public void shouldHopWhenDepthLimitIsReached() {
+        HopElidingExecutor executor = new HopElidingExecutor(pool, 2);
+        CompletableCompletionStage<Integer> stage = new CompletionStageFactory(executor).createCompletionStage();
+        CompletableCompletionStage<Integer> result = chain(stage, 5);
+
+        executor.execute(() -> stage.complete(0));
+
+        assertEquals(Integer.valueOf(5), result.join());
+        assertEquals(2, executor.getHopCount());
+        assertEquals(4, executor.getElidedHopCount());
+    }
+
+    @Test
+    public void zeroDepthShouldDisableElision() {
+        HopElidingExecutor executor = new HopElidingExecutor(pool, 0);
+        CompletableCompletionStage<Integer> stage = new CompletionStageFactory(executor).createCompletionStage();
+        CompletableCompletionStage<Integer> result = chain(stage, 5);
+
+        executor.execute(() -> stage.complete(0));
+
+        assertEquals(Integer.valueOf(5), result.join());
+        assertEquals(6, executor.getHopCount());
+        assertEquals(0, executor.getElidedHopCount());
+    }
+
+    @Test
+    public void dependentsOnOtherExecutorShouldHop() {
+        HopElidingExecutor executor = new HopElidingExecutor(pool);
+        HopElidingExecutor otherExecutor = new HopElidingExecutor(otherPool);
+        CompletionStageFactory factory = new CompletionStageFactory(executor);
+        CompletableCompletionStage<Integer> stage = factory.createCompletionStage();
+        CompletableCompletionStage<Thread> result = (CompletableCompletionStage<Thread>) stage
+            .thenApplyAsync(i -> Thread.currentThread(), otherExecutor);
+
+        executor.execute(() -> stage.complete(0));
+
+        assertNotSame(Thread.currentThread(), result.join());
+        assertEquals(1, otherExecutor.getHopCount());
+        assertEquals(0, otherExecutor.getElidedHopCount());
+    }
+
+    @Test
+    public void asyncTasksShouldNotBeElided() {
+        HopElidingExecutor executor = new HopElidingExecutor(pool);
+        CompletionStageFactory factory = new CompletionStageFactory(executor);
+        AtomicBoolean ranInline = new AtomicBoolean();
+
+        CompletionStage<CompletionStage<Thread>> outer = factory.supplyAsync(() -> {
+            AtomicBoolean done = new AtomicBoolean();
+            CompletionStage<Thread> inner = factory.supplyAsync(() -> {
+                done.set(true);
+                return Thread.currentThread();
+            });
+            ranInline.set(done.get());
+            return inner;
+        });
+
+        Thread outerThread = ((CompletableCompletionStage<Thread>) factory.supplyAsync(Thread::currentThread)).join();
+        Thread innerThread = ((CompletableCompletionStage<Thread>) ((CompletableCompletionStage<CompletionStage<Thread>>) outer).join()).join();
+        assertFalse(ranInline.get());
+        assertSame(outerThread, innerThread);
+        assertEquals(3, executor.getHopCount());
+    }
+
+    @Test
+    public void dependentOfCompletedStageShouldNotRunInsideAsyncCall() throws Exception {
+        HopElidingExecutor executor = new HopElidingExecutor(pool);
+        CompletableCompletionStage<Integer> stage = new CompletionStageFactory(executor).createCompletionStage();
+        stage.complete(0);
+
+        assertFalse(addedInPool(executor, stage));
+        assertEquals(2, executor.getHopCount());
+        assertEquals(0, executor.getElidedHopCount());
+    }
+
+    @Test
+    public void dependentOfCompletedFactoryStageShouldNotRunInsideAsyncCall() throws Exception {
+        HopElidingExecutor executor = new HopElidingExecutor(pool);
+        CompletionStage<Integer> stage = new CompletionStageFactory(executor).completedStage(0);
+
+        assertFalse(addedInPool(executor, stage));
+        assertEquals(0, executor.getElidedHopCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeDepthShouldBeRejected() {
+        new HopElidingExecutor(pool, -1);
+    }
+
+    /**
+     * Adds an async dependent to the stage from a pool thread, returns true if it ran inside the thenApplyAsync call.
+     */
+    private static boolean addedInPool(HopElidingExecutor executor, CompletionStage<Integer> stage) throws Exception {
+        AtomicBoolean inAsyncCall = new AtomicBoolean();
+        CompletableFuture<CompletionStage<Boolean>> dependent = new CompletableFuture<>();
+        executor.execute(() -> {
+            inAsyncCall.set(true);
+            dependent.complete(stage.thenApplyAsync(v -> inAsyncCall.get()));
+            inAsyncCall.set(false);
+        });
+        return dependent.get(10, TimeUnit.SECONDS).toCompletableFuture().get(10, TimeUnit.SECONDS);
+    }
+
+    private static CompletableCompletionStage<Integer> chain(CompletionStage<Integer> stage, int length) {
+        for (int i = 0; i < length; i++) {
+            stage = stage.thenApplyAsync(v -> v + 1);
+        }
+        return (CompletableCompletionStage<Integer>) stage;
+    }
+}
@@ -0,0 +1,284 @@
+/**
+ * Copyright 2009-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.completionstage;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MapAsyncTest {
+    private static final RuntimeException EXCEPTION = new RuntimeException("test");
+
+    private final CompletionStageFactory factory = new CompletionStageFactory(Runnable::run);
+    private final List<CompletableCompletionStage<Integer>> pending = new ArrayList<>();
+    private final AtomicInteger read = new AtomicInteger();
+    private final List<Integer> results = new ArrayList<>();
+
+    @Test
+    public void orderedModeShouldPassResultsInSourceOrder() {
+        CompletionStage<Void> stage = factory.mapAsync(source(3), this::pendingStage, 3, true, results::add);
+
+        pending.get(2).complete(20);
+        pending.get(1).complete(10);
+        assertEquals(Collections.emptyList(), results);
+
+        pending.get(0).complete(0);
+        assertEquals(Arrays.asList(0, 10, 20), results);
+        assertTrue(isDone(stage));
+    }
+
+    @Test
+    public void unorderedModeShouldPassResultsAsTheyComplete() {
+        CompletionStage<Void> stage = factory.mapAsync(source(3), this::pendingStage, 3, false, results::add);
+
+        pending.get(2).complete(20);
+        pending.get(1).complete(10);
+        assertEquals(Arrays.asList(20, 10), results);
+
+        pending.get(0).complete(0);
+        assertEquals(Arrays.asList(20, 10, 0), results);
+        assertTrue(isDone(stage));
+    }
+
+    @Test
+    public void sourceShouldBeReadOnlyWhenSlotIsFree() {
+        CompletionStage<Void> stage = factory.mapAsync(source(5), this::pendingStage, 2, false, results::add);
+        assertEquals(2, read.get());
+
+        pending.get(1).complete(1);
+        assertEquals(3, read.get());
+        pending.get(0).complete(0);
+        pending.get(2).complete(2);
+        assertEquals(5, read.get());
+        assertFalse(isDone(stage));
+
+        pending.get(3).complete(3);
+        pending.get(4).complete(4);
+        assertEquals(Arrays.asList(1, 0, 2, 3, 4), results);
+        assertTrue(isDone(stage));
+    }
+
+    @Test
+    public void completedItemShouldOccupySlotUntilPassedInOrderedMode() {
+        factory.mapAsync(source(5), this::pendingStage, 2, true, results::add);
+
+        pending.get(1).complete(1);
+        assertEquals(2, read.get());
+
+        pending.get(0).complete(0);
+        assertEquals(4, read.get());
+        assertEquals(Arrays.asList(0, 1), results);
+    }
+
+    @Test
+    public void failureShouldCompleteTheStageAndStopReading() {
+        CompletionStage<Void> stage = factory.mapAsync(source(5), this::pendingStage, 2, true, results::add);
+
+        pending.get(1).completeExceptionally(EXCEPTION);
+        assertFailedWith(stage, EXCEPTION);
+
+        pending.get(0).complete(0);
+        assertEquals(2, read.get());
+        assertEquals(Collections.emptyList(), results);
+    }
+
+    @Test
+    public void exceptionFromFunctionShouldFailTheStage() {
+        CompletionStage<Void> stage = factory.<Integer, Integer>mapAsync(source(5), i -> {
+            throw EXCEPTION;
+        }, 2, false, results::add);
+
+        assertFailedWith(stage, EXCEPTION);
+        assertEquals(1, read.get());
+    }
+
+    @Test
+    public void exceptionFromConsumerShouldFailTheStage() {
+        CompletionStage<Void> stage = factory.mapAsync(source(5), factory::completedStage, 2, false, i -> {
+            throw EXCEPTION;
+        });
+
+        assertFailedWith(stage, EXCEPTION);
+        assertEquals(1, read.get());
+    }
+
+    @Test
+    public void cancellationShouldStopReading() {
+        CompletableCompletionStage<Void> stage = (CompletableCompletionStage<Void>)
+                factory.mapAsync(source(5), this::pendingStage, 2, false, results::add);
+
+        assertTrue(stage.cancel());
+        pending.get(0).complete(0);
+
+        assertEquals(2, read.get());
+        assertEquals(Collections.emptyList(), results);
+    }
+
+    @Test
+    public void stageCreatedByOverriddenCreateCompletionStageShouldBeReturned() {
+        CompletionStageFactory customFactory = new CompletionStageFactory(Runnable::run) {
+            @Override
+            public <T> CompletableCompletionStage<T> createCompletionStage() {
+                return new CustomStage<>(this);
+            }
+        };
+        CompletableCompletionStage<Void> stage = (CompletableCompletionStage<Void>)
+                customFactory.mapAsync(source(5), this::pendingStage, 2, true, results::add);
+
+        assertTrue(stage instanceof CustomStage);
+        pending.get(0).complete(0);
+        assertEquals(Collections.singletonList(0), results);
+
+        // cancellation reaches the stage doing the work
+        assertTrue(stage.cancel());
+        pending.get(1).complete(1);
+        assertEquals(3, read.get());
+        assertEquals(Collections.singletonList(0), results);
+    }
+
+    @Test
+    public void emptySourceShouldCompleteAtOnce() {
+        assertEquals(Collections.emptyList(), join(factory.mapAsync(Collections.<Integer>emptyList(), factory::completedStage, 2)));
+    }
+
+    @Test
+    public void synchronouslyCompletedStagesShouldNotRunOutOfStack() {
+        List<Integer> source = IntStream.range(0, 100_000).boxed().collect(Collectors.toList());
+
+        List<Integer> mapped = join(factory.mapAsync(source, i -> factory.completedStage(i * 2), 16));
+
+        assertEquals(100_000, mapped.size());
+        for (int i = 0; i < mapped.size(); i++) {
+            assertEquals(Integer.valueOf(i * 2), mapped.get(i));
+        }
+    }
+
+    @Test
+    public void streamShouldBeReadLazily() {
+        CompletionStage<Void> stage = factory.mapAsync(IntStream.range(0, 5).boxed().peek(i -> read.incrementAndGet()),
+                this::pendingStage, 2, true, results::add);
+        assertEquals(2, read.get());
+
+        for (int i = 0; i < 5; i++) {
+            pending.get(i).complete(i);
+        }
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4), results);
+        assertTrue(isDone(stage));
+    }
+
+    @Test
+    public void resultsCompletedByManyThreadsShouldBePassedOneAtATime() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            AtomicInteger maxPending = new AtomicInteger();
+            AtomicInteger running = new AtomicInteger();
+            AtomicInteger inConsumer = new AtomicInteger();
+            AtomicBoolean concurrentCall = new AtomicBoolean();
+            List<Integer> passed = new ArrayList<>();
+            List<Integer> source = IntStream.range(0, 10_000).boxed().collect(Collectors.toList());
+
+            CompletionStage<Void> stage = factory.mapAsync(source, i -> {
+                maxPending.accumulateAndGet(running.incrementAndGet(), Math::max);
+                return factory.supplyAsync(() -> {
+                    running.decrementAndGet();
+                    return i;
+                }, executor);
+            }, 8, true, i -> {
+                if (inConsumer.incrementAndGet() > 1) {
+                    concurrentCall.set(true);
+                }
+                passed.add(i);
+                inConsumer.decrementAndGet();
+            });
+
+            stage.toCompletableFuture().get();
+            assertEquals(source, passed);
+            assertTrue(maxPending.get() <= 8);
+            assertFalse(concurrentCall.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maxConcurrencyShouldBePositive() {
+        factory.mapAsync(source(1), factory::completedStage, 0);
+    }
+
+    private CompletionStage<Integer> pendingStage(Integer item) {
+        CompletableCompletionStage<Integer> stage = factory.createCompletionStage();
+        pending.add(stage);
+        return stage;
+    }
+
+    private Iterable<Integer> source(int size) {
+        return () -> new Iterator<Integer>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public Integer next() {
+                read.incrementAndGet();
+                return next++;
+            }
+        };
+    }
+
+    private static final class CustomStage<T> extends SimpleCompletionStage<T> {
+        private CustomStage(CompletionStageFactory completionStageFactory) {
+            super(Runnable::run, completionStageFactory);
+        }
+    }
+
+    private static boolean isDone(CompletionStage<?> stage) {
+        return ((CompletableCompletionStage<?>) stage).isDone();
+    }
+
+    private static <T> T join(CompletionStage<T> stage) {
+        return ((CompletableCompletionStage<T>) stage).join();
+    }
+
+    private static void assertFailedWith(CompletionStage<?> stage, Throwable cause) {
+        try {
+            join(stage);
+            fail("Exception expected");
+        } catch (CompletionException e) {
+            assertSame(cause, e.getCause());
+        }
+    }
+}
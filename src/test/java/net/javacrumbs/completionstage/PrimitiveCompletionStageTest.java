@@ -0,0 +1,206 @@
+/**
+ * Copyright 2009-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.completionstage;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PrimitiveCompletionStageTest {
+    private static final RuntimeException EXCEPTION = new RuntimeException("test");
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final CompletionStageFactory factory = new CompletionStageFactory(executor);
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void intStagesShouldBeChained() {
+        IntCompletableCompletionStage stage = factory.createIntCompletionStage();
+        IntCompletionStage result = stage.thenApply(i -> i * 2).thenApply(i -> i + 1);
+
+        assertTrue(stage.complete(20));
+        assertFalse(stage.complete(30));
+
+        assertEquals(41, result.join());
+    }
+
+    @Test
+    public void asyncFunctionShouldRunOnExecutor() {
+        IntCompletableCompletionStage stage = factory.createIntCompletionStage();
+        AtomicReference<Thread> thread = new AtomicReference<>();
+        IntCompletionStage result = stage.thenApplyAsync(i -> {
+            thread.set(Thread.currentThread());
+            return i + 1;
+        });
+
+        stage.complete(1);
+
+        assertEquals(2, result.join());
+        assertNotSame(Thread.currentThread(), thread.get());
+    }
+
+    @Test
+    public void failingFunctionShouldFailTheNextStage() {
+        IntCompletableCompletionStage stage = factory.createIntCompletionStage();
+        IntCompletionStage result = stage.thenApply(i -> {
+            throw EXCEPTION;
+        }).thenApply(i -> i + 1);
+
+        stage.complete(1);
+
+        assertJoinFails(result);
+    }
+
+    @Test
+    public void failureShouldBePassedToDependents() {
+        IntCompletableCompletionStage stage = factory.createIntCompletionStage();
+        AtomicInteger calls = new AtomicInteger();
+        IntCompletionStage result = stage.thenApply(i -> calls.incrementAndGet());
+
+        stage.completeExceptionally(EXCEPTION);
+
+        assertJoinFails(result);
+        assertJoinFails(stage);
+        assertEquals(0, calls.get());
+    }
+
+    @Test
+    public void cancellationShouldBeThrownByJoin() {
+        IntCompletableCompletionStage stage = factory.createIntCompletionStage();
+        IntCompletionStage result = stage.thenApply(i -> i + 1);
+
+        stage.completeExceptionally(new CancellationException());
+
+        try {
+            stage.join();
+            fail("Exception expected");
+        } catch (CancellationException e) {
+            // expected
+        }
+        try {
+            result.join();
+            fail("Exception expected");
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof CancellationException);
+        }
+    }
+
+    @Test
+    public void intStagesShouldBeCombined() {
+        IntCompletableCompletionStage first = factory.createIntCompletionStage();
+        IntCompletableCompletionStage second = factory.createIntCompletionStage();
+        IntCompletionStage result = first.thenCombine(second, (a, b) -> a - b);
+
+        second.complete(2);
+        assertFalse(result.isDone());
+        first.complete(5);
+
+        assertEquals(3, result.join());
+    }
+
+    @Test
+    public void combineShouldFailOnFirstFailure() {
+        IntCompletableCompletionStage first = factory.createIntCompletionStage();
+        IntCompletableCompletionStage second = factory.createIntCompletionStage();
+        IntCompletionStage result = first.thenCombine(second, (a, b) -> a + b);
+
+        second.completeExceptionally(EXCEPTION);
+
+        assertTrue(result.isDone());
+        assertJoinFails(result);
+    }
+
+    @Test
+    public void intStageShouldBeConvertedToLong() {
+        IntCompletableCompletionStage stage = factory.createIntCompletionStage();
+        LongCompletionStage result = stage.thenApplyToLong(i -> i * 10_000_000_000L);
+
+        stage.complete(3);
+
+        assertEquals(30_000_000_000L, result.join());
+    }
+
+    @Test
+    public void actionShouldBeCalledWithTheValue() {
+        IntCompletableCompletionStage stage = factory.createIntCompletionStage();
+        AtomicInteger value = new AtomicInteger();
+        CompletionStage<Void> result = stage.thenAccept(value::set);
+
+        stage.complete(7);
+
+        assertEquals(7, value.get());
+        assertSame(null, ((CompletableCompletionStage<Void>) result).join());
+    }
+
+    @Test
+    public void intStageShouldBeBoxed() {
+        IntCompletableCompletionStage stage = factory.createIntCompletionStage();
+        CompletionStage<String> result = stage.boxed().thenApply(i -> "value " + i);
+
+        stage.complete(7);
+
+        assertEquals("value 7", ((CompletableCompletionStage<String>) result).join());
+    }
+
+    @Test
+    public void longStagesShouldBeChainedAndCombined() {
+        LongCompletableCompletionStage first = factory.createLongCompletionStage();
+        LongCompletableCompletionStage second = factory.createLongCompletionStage();
+        LongCompletionStage result = first.thenApply(l -> l * 2).thenCombine(second.thenApplyAsync(l -> l + 1), Long::sum);
+
+        first.complete(Integer.MAX_VALUE);
+        second.complete(1);
+
+        assertEquals(2L * Integer.MAX_VALUE + 2, result.join());
+        assertEquals(Long.valueOf(2L * Integer.MAX_VALUE + 2), ((CompletableCompletionStage<Long>) result.boxed()).join());
+    }
+
+    @Test
+    public void joinShouldWaitForTheResult() {
+        IntCompletableCompletionStage stage = factory.createIntCompletionStage();
+
+        executor.execute(() -> stage.complete(5));
+
+        assertEquals(5, stage.join());
+    }
+
+    private static void assertJoinFails(IntCompletionStage stage) {
+        try {
+            stage.join();
+            fail("Exception expected");
+        } catch (CompletionException e) {
+            assertSame(EXCEPTION, e.getCause());
+        }
+    }
+}
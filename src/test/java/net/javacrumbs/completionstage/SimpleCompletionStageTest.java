@@ -3,10 +3,24 @@ package net.javacrumbs.completionstage;
 import org.junit.Test;
 
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
 import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.isNull;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 
 public class SimpleCompletionStageTest {
 
@@ -46,4 +60,118 @@ public class SimpleCompletionStageTest {
         future.thenAccept(stage::doComplete);
         verify(action).accept(VALUE, null);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void combineShouldFailAsSoonAsOtherStageFails() {
+        CompletableCompletionStage<String> other = factory.createCompletionStage();
+        BiFunction<String, String, String> combiner = mockCombiner();
+        stage.thenCombine(other, combiner).whenComplete(action);
+
+        other.completeExceptionally(EXCEPTION);
+        verify(action).accept(isNull(String.class), any(CompletionException.class));
+
+        stage.complete(VALUE);
+        verifyZeroInteractions(combiner);
+    }
+
+    @Test
+    public void combineShouldCallFunctionOnceBothStagesAreCompleted() {
+        CompletableCompletionStage<String> other = factory.createCompletionStage();
+        BiFunction<String, String, String> combiner = (a, b) -> a + b;
+        stage.thenCombine(other, combiner).whenComplete(action);
+
+        other.complete("2");
+        verifyZeroInteractions(action);
+
+        stage.complete(VALUE);
+        verify(action).accept(VALUE, null);
+        verify(action).accept(VALUE + "2", null);
+    }
+
+    @Test
+    public void combineShouldAcceptForeignStage() {
+        CompletableFuture<String> other = new CompletableFuture<>();
+        BiFunction<String, String, String> combiner = mockCombiner();
+        CompletionStage<String> combined = stage.thenCombine(other, combiner);
+
+        stage.complete(VALUE);
+        other.complete(VALUE);
+        combined.whenComplete(action);
+
+        verify(combiner, times(1)).apply(VALUE, VALUE);
+    }
+
+    @Test
+    public void applyToEitherShouldTakeFirstResultOnly() {
+        CompletableCompletionStage<String> other = factory.createCompletionStage();
+        Function<String, String> fn = mockFunction();
+        stage.applyToEither(other, fn);
+
+        other.complete(VALUE);
+        stage.completeExceptionally(EXCEPTION);
+
+        verify(fn, times(1)).apply(VALUE);
+    }
+
+    @Test
+    public void applyToEitherShouldIgnoreSecondResultAfterFailure() {
+        CompletableCompletionStage<String> other = factory.createCompletionStage();
+        Function<String, String> fn = mockFunction();
+        stage.applyToEither(other, fn).whenComplete(action);
+
+        other.completeExceptionally(EXCEPTION);
+        stage.complete(VALUE);
+
+        verify(action).accept(VALUE, null);
+        verify(action).accept(isNull(String.class), any(CompletionException.class));
+        verifyZeroInteractions(fn);
+    }
+
+    @Test
+    public void applyToEitherShouldAcceptForeignStage() {
+        CompletableFuture<String> other = new CompletableFuture<>();
+        Function<String, String> fn = mockFunction();
+        stage.applyToEither(other, fn);
+
+        other.complete(VALUE);
+        stage.complete("ignored");
+
+        verify(fn, times(1)).apply(VALUE);
+    }
+
+    @Test
+    public void toCompletableFutureShouldBeShared() throws Exception {
+        CompletableFuture<String> future = stage.toCompletableFuture();
+        assertSame(future, stage.toCompletableFuture());
+        assertFalse(future.isDone());
+
+        stage.complete(VALUE);
+        assertEquals(VALUE, future.get());
+        assertSame(future, stage.toCompletableFuture());
+    }
+
+    @Test
+    public void toCompletableFutureOfCompletedStageShouldBeCompleted() throws Exception {
+        stage.completeExceptionally(EXCEPTION);
+
+        CompletableFuture<String> future = stage.toCompletableFuture();
+        assertTrue(future.isCompletedExceptionally());
+        assertSame(future, stage.toCompletableFuture());
+        try {
+            future.get();
+            fail("Exception expected");
+        } catch (ExecutionException e) {
+            assertSame(EXCEPTION, e.getCause());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Function<String, String> mockFunction() {
+        return mock(Function.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    private BiFunction<String, String, String> mockCombiner() {
+        return mock(BiFunction.class);
+    }
+}
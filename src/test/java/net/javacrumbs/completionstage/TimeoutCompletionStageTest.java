@@ -0,0 +1,248 @@
+/**
+ * Copyright 2009-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.completionstage;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TimeoutCompletionStageTest {
+    private static final String VALUE = "value";
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+    private final CompletionStageFactory factory = new CompletionStageFactory(executor);
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void timerShouldBeCreatedOnceOnFirstUse() throws Exception {
+        CompletionStageFactory lazyFactory = new CompletionStageFactory(executor);
+        Future<HashedWheelTimer> first = executor.submit(lazyFactory::getTimer);
+        Future<HashedWheelTimer> second = executor.submit(lazyFactory::getTimer);
+
+        assertSame(first.get(), second.get());
+        assertSame(first.get(), lazyFactory.getTimer());
+    }
+
+    @Test
+    public void orTimeoutShouldCompleteWithTimeoutException() throws Exception {
+        CompletableCompletionStage<String> stage = factory.createCompletionStage();
+        assertSame(stage, stage.orTimeout(20, TimeUnit.MILLISECONDS));
+
+        try {
+            stage.get(1, TimeUnit.SECONDS);
+            fail("Exception expected");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+    }
+
+    @Test
+    public void orTimeoutShouldNotChangeStageCompletedInTime() throws Exception {
+        CompletableCompletionStage<String> stage = factory.createCompletionStage();
+        stage.orTimeout(20, TimeUnit.MILLISECONDS);
+        stage.complete(VALUE);
+
+        Thread.sleep(50);
+        assertEquals(VALUE, stage.join());
+    }
+
+    @Test
+    public void orTimeoutOfCompletedStageShouldBeIgnored() {
+        CompletableCompletionStage<String> stage = factory.createCompletionStage();
+        stage.complete(VALUE);
+
+        assertSame(stage, stage.orTimeout(0, TimeUnit.MILLISECONDS));
+        assertEquals(VALUE, stage.join());
+    }
+
+    @Test
+    public void completeOnTimeoutShouldCompleteWithValue() throws Exception {
+        CompletableCompletionStage<String> stage = factory.createCompletionStage();
+        stage.completeOnTimeout(VALUE, 20, TimeUnit.MILLISECONDS);
+
+        assertEquals(VALUE, stage.get(1, TimeUnit.SECONDS));
+        assertFalse(stage.complete("other"));
+    }
+
+    @Test
+    public void defaultOrTimeoutShouldCompleteWithTimeoutException() throws Exception {
+        FutureBackedStage<String> stage = new FutureBackedStage<>(executor);
+        assertSame(stage, stage.orTimeout(20, TimeUnit.MILLISECONDS));
+
+        try {
+            stage.get(1, TimeUnit.SECONDS);
+            fail("Exception expected");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+    }
+
+    @Test
+    public void defaultCompleteOnTimeoutShouldCompleteWithValue() throws Exception {
+        FutureBackedStage<String> stage = new FutureBackedStage<>(executor);
+        assertSame(stage, stage.completeOnTimeout(VALUE, 20, TimeUnit.MILLISECONDS));
+
+        assertEquals(VALUE, stage.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void defaultTimeoutShouldNotChangeStageCompletedInTime() throws Exception {
+        FutureBackedStage<String> stage = new FutureBackedStage<>(executor);
+        stage.completeOnTimeout("other", 20, TimeUnit.MILLISECONDS);
+        stage.complete(VALUE);
+
+        Thread.sleep(50);
+        assertEquals(VALUE, stage.join());
+    }
+
+    @Test
+    public void delayedStageShouldBeCompletedAfterDelay() throws Exception {
+        long start = System.nanoTime();
+        CompletionStage<Void> stage = factory.delayedStage(30, TimeUnit.MILLISECONDS);
+
+        assertNull(((CompletableCompletionStage<Void>) stage).get(1, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(30));
+    }
+
+    @Test
+    public void delayedStageShouldBeCreatedByOverriddenCreateCompletionStage() throws Exception {
+        CompletionStageFactory customFactory = new CompletionStageFactory(executor) {
+            @Override
+            public <T> CompletableCompletionStage<T> createCompletionStage() {
+                return new FutureBackedStage<>(executor);
+            }
+        };
+        CompletionStage<Void> stage = customFactory.delayedStage(20, TimeUnit.MILLISECONDS);
+
+        assertTrue(stage instanceof FutureBackedStage);
+        assertNull(((CompletableCompletionStage<Void>) stage).get(1, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Stage which does not override the default timeout methods.
+     */
+    private static final class FutureBackedStage<T> extends CompletionStageAdapter<T> implements CompletableCompletionStage<T> {
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        private FutureBackedStage(Executor defaultExecutor) {
+            super(defaultExecutor);
+        }
+
+        @Override
+        public boolean complete(T result) {
+            return future.complete(result);
+        }
+
+        @Override
+        public boolean completeExceptionally(Throwable ex) {
+            return future.completeExceptionally(ex);
+        }
+
+        @Override
+        public <U> CompletionStage<U> thenApplyAsync(Function<? super T, ? extends U> fn, Executor executor) {
+            return future.thenApplyAsync(fn, executor);
+        }
+
+        @Override
+        public CompletionStage<Void> thenAcceptAsync(Consumer<? super T> action, Executor executor) {
+            return future.thenAcceptAsync(action, executor);
+        }
+
+        @Override
+        public CompletionStage<Void> thenRunAsync(Runnable action, Executor executor) {
+            return future.thenRunAsync(action, executor);
+        }
+
+        @Override
+        public <U, V> CompletionStage<V> thenCombineAsync(CompletionStage<? extends U> other, BiFunction<? super T, ? super U, ? extends V> fn, Executor executor) {
+            return future.thenCombineAsync(other, fn, executor);
+        }
+
+        @Override
+        public <U> CompletionStage<Void> thenAcceptBothAsync(CompletionStage<? extends U> other, BiConsumer<? super T, ? super U> action, Executor executor) {
+            return future.thenAcceptBothAsync(other, action, executor);
+        }
+
+        @Override
+        public CompletionStage<Void> runAfterBothAsync(CompletionStage<?> other, Runnable action, Executor executor) {
+            return future.runAfterBothAsync(other, action, executor);
+        }
+
+        @Override
+        public <U> CompletionStage<U> applyToEitherAsync(CompletionStage<? extends T> other, Function<? super T, U> fn, Executor executor) {
+            return future.applyToEitherAsync(other, fn, executor);
+        }
+
+        @Override
+        public CompletionStage<Void> acceptEitherAsync(CompletionStage<? extends T> other, Consumer<? super T> action, Executor executor) {
+            return future.acceptEitherAsync(other, action, executor);
+        }
+
+        @Override
+        public CompletionStage<Void> runAfterEitherAsync(CompletionStage<?> other, Runnable action, Executor executor) {
+            return future.runAfterEitherAsync(other, action, executor);
+        }
+
+        @Override
+        public <U> CompletionStage<U> thenComposeAsync(Function<? super T, ? extends CompletionStage<U>> fn, Executor executor) {
+            return future.thenComposeAsync(fn, executor);
+        }
+
+        @Override
+        public CompletionStage<T> exceptionally(Function<Throwable, ? extends T> fn) {
+            return future.exceptionally(fn);
+        }
+
+        @Override
+        public CompletionStage<T> whenCompleteAsync(BiConsumer<? super T, ? super Throwable> action, Executor executor) {
+            return future.whenCompleteAsync(action, executor);
+        }
+
+        @Override
+        public <U> CompletionStage<U> handleAsync(BiFunction<? super T, Throwable, ? extends U> fn, Executor executor) {
+            return future.handleAsync(fn, executor);
+        }
+
+        @Override
+        public CompletableFuture<T> toCompletableFuture() {
+            return future;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ * Copyright 2009-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.javacrumbs.completionstage;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the same tests with trampolined callbacks.
+ */
+public class TrampolinedCompletionStageFactoryTest extends AbstractUnfinishedCompletionStageTest {
+    private static final int CHAIN_LENGTH = 100_000;
+
+    private final CompletionStageFactory factory = new CompletionStageFactory(defaultExecutor, true);
+
+    @Override
+    protected CompletionStage<String> createCompletionStage(String value) {
+        return new DelayedSimpleCompletionStage(c -> c.complete(value), defaultExecutor, factory);
+    }
+
+    @Override
+    protected CompletionStage<String> createCompletionStage(Throwable e) {
+        return new DelayedSimpleCompletionStage(c -> c.completeExceptionally(e), defaultExecutor, factory);
+    }
+
+    @Override
+    protected void finish(CompletionStage<String> completionStage) {
+        ((DelayedSimpleCompletionStage) completionStage).executeDelayedAction();
+    }
+
+    @Test
+    public void longChainShouldNotOverflowTheStack() {
+        CompletableCompletionStage<Integer> start = factory.createCompletionStage();
+        CompletionStage<Integer> stage = start;
+        for (int i = 0; i < CHAIN_LENGTH; i++) {
+            stage = stage.thenApply(x -> x + 1);
+        }
+        AtomicInteger result = new AtomicInteger();
+        stage.thenAccept(result::set);
+
+        start.complete(0);
+
+        assertThat(result.get()).isEqualTo(CHAIN_LENGTH);
+    }
+
+    @Test
+    public void longComposeChainShouldNotOverflowTheStack() {
+        CompletableCompletionStage<Integer> start = factory.createCompletionStage();
+        CompletionStage<Integer> stage = start;
+        for (int i = 0; i < CHAIN_LENGTH; i++) {
+            stage = stage.thenCompose(x -> factory.completedStage(x + 1));
+        }
+        AtomicInteger result = new AtomicInteger();
+        stage.thenAccept(result::set);
+
+        start.complete(0);
+
+        assertThat(result.get()).isEqualTo(CHAIN_LENGTH);
+    }
+
+    @Test
+    public void waitingForQueuedDependentShouldNotDeadlock() {
+        CompletableCompletionStage<Integer> start = factory.createCompletionStage();
+        AtomicReference<Object> result = new AtomicReference<>();
+        start.thenAccept(value -> {
+            CompletableCompletionStage<Integer> completed = factory.createCompletionStage();
+            completed.complete(value);
+            // the dependent is queued by the trampoline, waiting for it has to run the queue
+            CompletableCompletionStage<Integer> dependent = (CompletableCompletionStage<Integer>) completed.thenApply(x -> x + 1);
+            try {
+                result.set(dependent.get(2, TimeUnit.SECONDS) + dependent.join());
+            } catch (Exception e) {
+                result.set(e);
+            }
+        });
+
+        start.complete(1);
+
+        assertThat(result.get()).isEqualTo(4);
+    }
+
+    private static class DelayedSimpleCompletionStage extends SimpleCompletionStage<String> {
+        private final Consumer<DelayedSimpleCompletionStage> delayedAction;
+
+        private DelayedSimpleCompletionStage(Consumer<DelayedSimpleCompletionStage> delayedAction, Executor defaultExecutor, CompletionStageFactory factory) {
+            super(defaultExecutor, TrampolineExecutor.INSTANCE, factory);
+            this.delayedAction = delayedAction;
+        }
+
+        private void executeDelayedAction() {
+            delayedAction.accept(this);
+        }
+    }
+}